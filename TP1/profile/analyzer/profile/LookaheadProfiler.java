@@ -0,0 +1,212 @@
+package analyzer.profile;
+
+import analyzer.ast.ParseException;
+import analyzer.ast.Parser;
+import analyzer.ast.Token;
+import analyzer.ast.TokenMgrError;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Counts the speculative lookahead (the jj_2 / jj_3 methods) done by the parser,
+ * for every production of the grammar.
+ *
+ * It needs a parser generated with DEBUG_LOOKAHEAD (see the target "lookahead" of build.xml):
+ * this parser reports the productions, the tokens and the speculations to the trace methods
+ * overridden here. They are not printed, only counted:
+ * - calls: the number of times the production is parsed;
+ * - lookaheads: the speculations started while parsing the production, and the tokens they
+ *   scanned. A token scanned again by a second speculation is counted again;
+ * - speculative calls: the number of times the production is tried by a speculation of another
+ *   one, and the tokens scanned in it.
+ *
+ * A speculation lasts until the parser consumes a token or leaves a production, so
+ * two speculations done back to back (as in "if (jj_2_1(2)) ... else if (jj_2_2(2))") are counted
+ * as one.
+ */
+public class LookaheadProfiler extends Parser {
+
+    private static final String LOOKING_AHEAD = "(LOOKING AHEAD...)";
+    private static final String LOOKAHEAD_DONE = "(LOOKAHEAD ";
+
+    private static class Stats {
+        long calls;
+        long lookaheads;
+        long lookaheadTokens;
+        long speculativeCalls;
+        long speculativeTokens;
+    }
+
+    private final Map<String, Stats> m_stats = new HashMap<>();
+
+    // The productions tried by the current speculation, and the one which started it
+    private String[] m_stack = new String[64];
+    private int m_depth = 0;
+    private String m_origin = null;
+
+    private long m_consumed = 0;
+    private long m_scanned = 0;
+
+    public LookaheadProfiler(InputStream input) {
+        super(input);
+    }
+
+    @Override
+    protected void trace_call(String s) {
+        if (s.endsWith(LOOKING_AHEAD)) {
+            String name = s.substring(0, s.length() - LOOKING_AHEAD.length());
+            startSpeculation();
+            stats(name).speculativeCalls++;
+            push(name);
+        } else {
+            endSpeculation();
+        }
+    }
+
+    // JavaCC 7.0.2 does not call trace_call() when it enters a production (only for the
+    // speculative ones), so the calls are counted when they return
+    @Override
+    protected void trace_return(String s) {
+        if (s.contains(LOOKAHEAD_DONE)) {
+            if (m_depth > 0) {
+                m_depth--;
+            }
+        } else {
+            endSpeculation();
+            stats(s).calls++;
+        }
+    }
+
+    @Override
+    protected void trace_token(Token t, String where) {
+        endSpeculation();
+        m_consumed++;
+    }
+
+    @Override
+    protected void trace_scan(Token t1, int t2) {
+        startSpeculation();
+        m_scanned++;
+        stats(m_origin).lookaheadTokens++;
+        if (m_depth > 0) {
+            stats(m_stack[m_depth - 1]).speculativeTokens++;
+        }
+    }
+
+    private void startSpeculation() {
+        if (m_origin == null) {
+            m_origin = caller();
+            stats(m_origin).lookaheads++;
+        }
+    }
+
+    // A successful lookahead leaves with an exception, without returning from the productions
+    // it was trying: they are removed here
+    private void endSpeculation() {
+        m_origin = null;
+        m_depth = 0;
+    }
+
+    // The production which called jj_2_*(), found in the stack since it was not traced on entry
+    private static String caller() {
+        for (StackTraceElement e : new Throwable().getStackTrace()) {
+            if (e.getClassName().equals(Parser.class.getName()) && !e.getMethodName().startsWith("jj_")
+                    && !e.getMethodName().startsWith("trace_")) {
+                return e.getMethodName();
+            }
+        }
+        return "<none>";
+    }
+
+    private void push(String name) {
+        if (m_depth == m_stack.length) {
+            m_stack = Arrays.copyOf(m_stack, m_depth * 2);
+        }
+        m_stack[m_depth++] = name;
+    }
+
+    private Stats stats(String name) {
+        Stats stats = m_stats.get(name);
+        if (stats == null) {
+            stats = new Stats();
+            m_stats.put(name, stats);
+        }
+        return stats;
+    }
+
+    // Parse the next input with the same counters, returns false on a syntax error
+    public boolean parse(InputStream input) {
+        ReInit(input);
+        endSpeculation();
+        try {
+            Program();
+            return true;
+        } catch (ParseException | TokenMgrError e) {
+            return false;
+        }
+    }
+
+    // Print the counters, the productions scanning the most tokens first
+    public void report(PrintStream out) {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<>(m_stats.entrySet());
+        entries.sort((a, b) -> {
+            int order = Long.compare(b.getValue().lookaheadTokens, a.getValue().lookaheadTokens);
+            return order != 0 ? order : a.getKey().compareTo(b.getKey());
+        });
+
+        out.printf("%-16s %10s %12s %12s %12s %12s%n", "production", "calls", "lookaheads", "scanned", "spec. calls", "scanned in");
+        for (Map.Entry<String, Stats> entry : entries) {
+            Stats s = entry.getValue();
+            out.printf("%-16s %10d %12d %12d %12d %12d%n", entry.getKey(), s.calls, s.lookaheads, s.lookaheadTokens,
+                    s.speculativeCalls, s.speculativeTokens);
+        }
+        out.println();
+        out.printf("%d tokens consumed, %d scanned by lookahead (%.2f per token)%n", m_consumed, m_scanned,
+                m_consumed == 0 ? 0.0 : (double) m_scanned / m_consumed);
+    }
+
+    // The arguments are the files to parse, or folders of files to parse
+    public static void main(String[] args) throws IOException {
+        if (args.length <= 0) {
+            System.err.println("args[0] is missing! (The files to read)");
+            return;
+        }
+
+        List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            File file = new File(arg);
+            if (file.isDirectory()) {
+                File[] children = file.listFiles(File::isFile);
+                Arrays.sort(children);
+                files.addAll(Arrays.asList(children));
+            } else {
+                files.add(file);
+            }
+        }
+
+        LookaheadProfiler profiler = null;
+        int errors = 0;
+        for (File file : files) {
+            try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+                if (profiler == null) {
+                    profiler = new LookaheadProfiler(input);
+                }
+                if (!profiler.parse(input)) {
+                    errors++;
+                }
+            }
+        }
+        profiler.report(System.out);
+        System.out.println(files.size() + " files parsed, " + errors + " with errors.");
+    }
+}
@@ -3,6 +3,14 @@ package analyzer;
 import analyzer.ast.*;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created: 17-08-02
@@ -18,17 +26,37 @@ public class Main {
 
     // It is the entry point of the programs
     // The arguments are:
-    // arg[0] (Required): The path of the input file to parse
+    // arg[0] (Required): The path of the input file to parse, or of a folder of input files
     // arg[1] (Optional): The path of the output file, will print to System.out if missing.
+    //                    Required if arg[0] is a folder, it is then the folder receiving the outputs.
+    // arg[2] (Optional): The number of threads used when arg[0] is a folder, every core by default.
     public static void main(String[] args) {
         if(args.length <= 0) {
             System.err.println("args[0] is missing! (The file to read)");
             return;
         }
 
+        File source = new File(args[0]);
+        if(source.isDirectory()) {
+            if(args.length <= 1) {
+                System.err.println("args[1] is missing! (The folder to write in)");
+                return;
+            }
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            File[] files = source.listFiles(File::isFile);
+            Arrays.sort(files);
+            try {
+                int errors = RunBatch(Arrays.asList(files), new File(args[1]), threads);
+                System.out.println(files.length + " files parsed, " + errors + " with errors.");
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
         InputStream file;
         try {
-            file = new java.io.FileInputStream(args[0]);
+            file = new java.io.FileInputStream(source);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
             return;
@@ -46,17 +74,117 @@ public class Main {
 
     // This is the main function of the program, it is used by main and it is used
     // by the test cases.
+    // The tree is written directly in the given output, so many calls can run at
+    // the same time as long as they do not share their output.
     public static void Run(InputStream input, PrintStream output) throws ParseException {
-        PrintStream stdout = new PrintStream(System.out);
-        System.setOut(output);
-
         // This line ask the parser built from the jjt file to read & parse the input file
         ASTProgram root = Parser.ParseTree(input);
-        root.dump("  ");
 
-        System.setOut(stdout);
+        TreePrinter printer = new TreePrinter(output);
+        try {
+            printer.print(root, "  ");
+
+            // Make sure everything is flushed in the output
+            printer.flush();
+        } catch (IOException e) {
+            // A PrintStream never throws, it keeps the error for checkError()
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Same as Run(), but every syntax error of the input is found in a single parse (see
+    // Parser.ParseTree(InputStream, List)). The tree is only written when there is no error.
+    // Returns the errors in the order of the input, empty when the input is valid.
+    public static List<ParseException> RunAll(InputStream input, PrintStream output) throws ParseException {
+        List<ParseException> errors = new ArrayList<>();
+        ASTProgram root = Parser.ParseTree(input, errors);
+        return PrintAll(root, errors, output);
+    }
+
+    // Same as RunAll(InputStream, PrintStream), but the file is mapped in memory (see
+    // Parser.ParseTree(Path)). A file which cannot be opened throws an IOException.
+    public static List<ParseException> RunAll(Path input, PrintStream output) throws ParseException, IOException {
+        List<ParseException> errors = new ArrayList<>();
+        ASTProgram root = Parser.ParseTree(input, errors);
+        return PrintAll(root, errors, output);
+    }
+
+    // Write the tree of RunAll() when the parse has no error
+    private static List<ParseException> PrintAll(ASTProgram root, List<ParseException> errors, PrintStream output) {
+        if(!errors.isEmpty()) {
+            return errors;
+        }
+
+        TreePrinter printer = new TreePrinter(output);
+        try {
+            printer.print(root, "  ");
+            printer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return errors;
+    }
+
+    // Parse every input file on a pool of threads and write each tree in a file with
+    // the same name in the output folder. When a file cannot be parsed, the messages of
+    // all its errors are written in its output file instead, one after the other (the
+    // first one is the message the test cases expect). A file which cannot be read, or
+    // whose parse fails (a too deep nesting overflows the stack), is counted the same way
+    // and the other files are still parsed.
+    // Returns the number of files that could not be parsed.
+    public static int RunBatch(List<File> inputs, File outputFolder, int threads) throws IOException, InterruptedException {
+        if(!outputFolder.isDirectory() && !outputFolder.mkdirs()) {
+            throw new IOException("Could not create the folder " + outputFolder);
+        }
 
-        // If the visitor has printed in the output, make sure everything is flushed
-        output.flush();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(inputs.size());
+            for(File input : inputs) {
+                File output = new File(outputFolder, input.getName());
+                results.add(pool.submit(() -> RunFile(input, output)));
+            }
+
+            int errors = 0;
+            for(int i = 0; i < results.size(); i++) {
+                try {
+                    if(!results.get(i).get()) {
+                        errors++;
+                    }
+                } catch (ExecutionException e) {
+                    // The output file itself could not be written, the failure can only be shown here
+                    System.err.println(inputs.get(i) + ": " + e.getCause());
+                    errors++;
+                }
+            }
+            return errors;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Parse a single file for RunBatch, returns false if the file could not be parsed.
+    // The file is mapped in memory. The failures of the file are written in its output, only
+    // the output itself can throw.
+    private static boolean RunFile(File input, File output) throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(output))) {
+            try {
+                List<ParseException> errors = RunAll(input.toPath(), out);
+                for(int i = 0; i < errors.size(); i++) {
+                    if(i > 0) {
+                        out.println();
+                    }
+                    out.print(errors.get(i).getMessage());
+                }
+                return errors.isEmpty();
+            } catch (ParseException | TokenMgrError e) {
+                out.print(e.getMessage());
+                return false;
+            } catch (IOException | RuntimeException | StackOverflowError e) {
+                // The input could not be read, or its parse failed before the tree was written
+                out.print(e);
+                return false;
+            }
+        }
     }
 }
@@ -0,0 +1,215 @@
+package analyzer.ast;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Description: A ParserTokenManager that counts what the lexer does, to find the rules of
+ * Grammaire.jjt that are worth restructuring. The tokens are the same as with the generated
+ * token manager, so a Parser built on it gives the same tree.
+ *
+ * For every kind of token: how many were returned, their characters and the time spent in
+ * getNextToken() to find them. The comments (special tokens) are counted by kind too.
+ * For every lexical state: the characters read and the characters given back with backup().
+ * In the comment states every MORE match reads one character, so the characters read in
+ * these states are the MORE transitions.
+ *
+ * The generated matching methods (jjMoveNfa_0...) are private, their time is part of the
+ * time of the kinds they match: the kinds without a literal image (IDENTIFIER, INTEGER, REAL,
+ * COMPARE...) are the ones found by the NFA.
+ *
+ * Usage:
+ *   ProfilingTokenManager lexer = new ProfilingTokenManager(reader);
+ *   ASTProgram root = new Parser(lexer).Program();
+ *   lexer.report(System.out);
+ */
+public class ProfilingTokenManager extends ParserTokenManager {
+
+    private final CountingStream m_stream;
+
+    private final long[] m_tokens = new long[tokenImage.length];
+    private final long[] m_tokenChars = new long[tokenImage.length];
+    private final long[] m_tokenNanos = new long[tokenImage.length];
+    private final long[] m_specials = new long[tokenImage.length];
+    private final long[] m_specialChars = new long[tokenImage.length];
+
+    public ProfilingTokenManager(Reader input) {
+        this(new CountingStream(input));
+    }
+
+    private ProfilingTokenManager(CountingStream stream) {
+        super(stream);
+        m_stream = stream;
+        stream.m_lexer = this;
+    }
+
+    // Profile the next source with the same counters
+    public void ReInit(Reader input) {
+        m_stream.ReInit(input);
+        ReInit(m_stream);
+    }
+
+    @Override
+    public Token getNextToken() {
+        long start = System.nanoTime();
+        Token token = super.getNextToken();
+        long end = System.nanoTime();
+
+        m_tokens[token.kind]++;
+        m_tokenChars[token.kind] += token.image.length();
+        m_tokenNanos[token.kind] += end - start;
+        for (Token special = token.specialToken; special != null; special = special.specialToken) {
+            m_specials[special.kind]++;
+            m_specialChars[special.kind] += special.image.length();
+        }
+        return token;
+    }
+
+    public long getTokenCount(int kind) {
+        return m_tokens[kind];
+    }
+
+    public long getTokenChars(int kind) {
+        return m_tokenChars[kind];
+    }
+
+    public long getTokenNanos(int kind) {
+        return m_tokenNanos[kind];
+    }
+
+    public long getSpecialCount(int kind) {
+        return m_specials[kind];
+    }
+
+    // Characters read in the given lexical state, including the ones read again after a backup
+    public long getReadChars(int lexState) {
+        return m_stream.m_reads[lexState];
+    }
+
+    public long getBackupChars(int lexState) {
+        return m_stream.m_backupChars[lexState];
+    }
+
+    public long getBackups(int lexState) {
+        return m_stream.m_backups[lexState];
+    }
+
+    public void reset() {
+        Arrays.fill(m_tokens, 0);
+        Arrays.fill(m_tokenChars, 0);
+        Arrays.fill(m_tokenNanos, 0);
+        Arrays.fill(m_specials, 0);
+        Arrays.fill(m_specialChars, 0);
+        Arrays.fill(m_stream.m_reads, 0);
+        Arrays.fill(m_stream.m_backups, 0);
+        Arrays.fill(m_stream.m_backupChars, 0);
+    }
+
+    // Print the statistics, the most expensive kinds first
+    public void report(PrintStream out) {
+        Integer[] kinds = new Integer[tokenImage.length];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = i;
+        }
+        Arrays.sort(kinds, (a, b) -> Long.compare(m_tokenNanos[b], m_tokenNanos[a]));
+
+        long totalNanos = 0;
+        for (long nanos : m_tokenNanos) {
+            totalNanos += nanos;
+        }
+
+        out.printf("%-20s %10s %10s %8s %12s %6s%n", "token", "count", "chars", "chars/t", "us", "%");
+        for (int kind : kinds) {
+            if (m_tokens[kind] == 0) {
+                continue;
+            }
+            out.printf("%-20s %10d %10d %8.2f %12.1f %6.1f%n", tokenImage[kind], m_tokens[kind], m_tokenChars[kind],
+                    (double) m_tokenChars[kind] / m_tokens[kind], m_tokenNanos[kind] / 1000.0,
+                    totalNanos == 0 ? 0.0 : 100.0 * m_tokenNanos[kind] / totalNanos);
+        }
+
+        out.println();
+        out.printf("%-20s %10s %10s%n", "special token", "count", "chars");
+        for (int kind = 0; kind < tokenImage.length; kind++) {
+            if (m_specials[kind] > 0) {
+                out.printf("%-20s %10d %10d%n", tokenImage[kind], m_specials[kind], m_specialChars[kind]);
+            }
+        }
+
+        out.println();
+        out.printf("%-24s %10s %10s %10s%n", "lexical state", "read", "backups", "backed up");
+        for (int state = 0; state < lexStateNames.length; state++) {
+            out.printf("%-24s %10d %10d %10d%n", lexStateNames[state], m_stream.m_reads[state],
+                    m_stream.m_backups[state], m_stream.m_backupChars[state]);
+        }
+    }
+
+    // Profile the lexer while parsing the given files, and print the statistics of all of them
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length <= 0) {
+            System.err.println("args[0] is missing! (The files to read)");
+            return;
+        }
+
+        ProfilingTokenManager lexer = null;
+        for (String path : args) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8)) {
+                if (lexer == null) {
+                    lexer = new ProfilingTokenManager(reader);
+                } else {
+                    lexer.ReInit(reader);
+                }
+                new Parser(lexer).Program();
+            }
+        }
+        lexer.report(System.out);
+    }
+
+    // Counts the characters read and given back, in the lexical state of the token manager
+    private static class CountingStream extends JavaCharStream {
+
+        private ProfilingTokenManager m_lexer;
+
+        private final long[] m_reads = new long[lexStateNames.length];
+        private final long[] m_backups = new long[lexStateNames.length];
+        private final long[] m_backupChars = new long[lexStateNames.length];
+
+        CountingStream(Reader input) {
+            super(input);
+        }
+
+        @Override
+        public char BeginToken() throws IOException {
+            // Without backed up characters, BeginToken() calls readChar() which counts it
+            if (inBuf > 0) {
+                m_reads[state()]++;
+            }
+            return super.BeginToken();
+        }
+
+        @Override
+        public char readChar() throws IOException {
+            char c = super.readChar();
+            m_reads[state()]++;
+            return c;
+        }
+
+        @Override
+        public void backup(int amount) {
+            super.backup(amount);
+            int state = state();
+            m_backups[state]++;
+            m_backupChars[state] += amount;
+        }
+
+        // The token manager is not set yet while the super constructor runs
+        private int state() {
+            return m_lexer == null ? 0 : m_lexer.curLexState;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package analyzer.ast;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Description: Writes a tree in the same format as SimpleNode.dump(), one node per line with one
+ * more space of indentation at every level, but without building a string per node.
+ *
+ * The names of the nodes are encoded once, the indentation is copied from a buffer of spaces and
+ * everything goes through a byte buffer that is written to the output when it is full. The tree
+ * is walked with an explicit stack, so deep trees do not overflow the call stack.
+ *
+ * Like dump(), every node is printed with its name in ParserTreeConstants.jjtNodeName: a node
+ * class overriding toString() would have to be handled here too.
+ */
+public class TreePrinter implements ParserTreeConstants {
+
+    private static final byte[][] NAMES = new byte[jjtNodeName.length][];
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (int i = 0; i < jjtNodeName.length; i++) {
+            NAMES[i] = jjtNodeName[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final OutputStream m_output;
+    private final byte[] m_buffer;
+    private int m_count = 0;
+
+    private byte[] m_spaces = new byte[64];
+
+    // Nodes waiting to be printed, with their depth
+    private Node[] m_stack = new Node[64];
+    private int[] m_depths = new int[64];
+
+    public TreePrinter(OutputStream output) {
+        this(output, 1 << 16);
+    }
+
+    public TreePrinter(OutputStream output, int bufferSize) {
+        m_output = output;
+        m_buffer = new byte[bufferSize];
+        Arrays.fill(m_spaces, (byte) ' ');
+    }
+
+    /**
+     * Print the tree under root, like root.dump(prefix). The output is not flushed, call flush()
+     * when done.
+     */
+    public void print(Node root, String prefix) throws IOException {
+        // Encoded like the PrintStream used by dump()
+        byte[] prefixBytes = prefix.getBytes();
+
+        int sp = 0;
+        m_stack[sp] = root;
+        m_depths[sp] = 0;
+        sp++;
+
+        while (sp > 0) {
+            sp--;
+            Node node = m_stack[sp];
+            int depth = m_depths[sp];
+            m_stack[sp] = null;
+
+            write(prefixBytes);
+            writeSpaces(depth);
+            write(NAMES[((SimpleNode) node).getId()]);
+            write(LINE_SEPARATOR);
+
+            // The children are pushed in reverse order so they come out in order
+            int numChildren = node.jjtGetNumChildren();
+            if (sp + numChildren > m_stack.length) {
+                int length = Math.max(m_stack.length * 2, sp + numChildren);
+                m_stack = Arrays.copyOf(m_stack, length);
+                m_depths = Arrays.copyOf(m_depths, length);
+            }
+            for (int i = numChildren - 1; i >= 0; i--) {
+                Node child = node.jjtGetChild(i);
+                // Like dump(), a missing child is skipped
+                if (child != null) {
+                    m_stack[sp] = child;
+                    m_depths[sp] = depth + 1;
+                    sp++;
+                }
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        if (m_count > 0) {
+            m_output.write(m_buffer, 0, m_count);
+            m_count = 0;
+        }
+        m_output.flush();
+    }
+
+    private void writeSpaces(int count) throws IOException {
+        if (count > m_spaces.length) {
+            m_spaces = new byte[Math.max(count, m_spaces.length * 2)];
+            Arrays.fill(m_spaces, (byte) ' ');
+        }
+        write(m_spaces, count);
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        write(bytes, bytes.length);
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        if (length > m_buffer.length - m_count) {
+            m_output.write(m_buffer, 0, m_count);
+            m_count = 0;
+            if (length > m_buffer.length) {
+                m_output.write(bytes, 0, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, m_buffer, m_count, length);
+        m_count += length;
+    }
+}
@@ -0,0 +1,281 @@
+package analyzer.generator;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Description: Generates random programs following Grammaire.jjt, to test the parser on inputs
+ * much larger than the test suite.
+ *
+ * The shape of the programs is given by the public fields (the "knobs"), change them before calling
+ * generate(). The same knobs and seed always give the same program. The language of this TP has no
+ * types, so the programs are only syntactically valid: the expressions mix integers, reals, arrays
+ * and variables freely.
+ */
+public class ProgramGenerator {
+
+    // Number of statements, counting the statements nested in the loops, if and switch
+    public int statements = 100;
+    // Depth of the expression trees, 0 only gives single values
+    public int exprDepth = 3;
+    // Maximum number of while, do while, for, if and switch nested in each other
+    public int nesting = 2;
+    // Maximum number of statements in the block of a loop, if or case
+    public int blockSize = 4;
+    // Number of variables used in the statements
+    public int variables = 8;
+    // Number of enum statements at the start of the program, each with enumValues values
+    public int enums = 2;
+    public int enumValues = 4;
+    // Maximum number of cases in a switch, a default case is added half of the time
+    public int cases = 4;
+    // Maximum number of elements in an array expression, 0 to never use arrays
+    public int arraySize = 3;
+    public long seed = 0;
+
+    private static final String[] ADD_OPS = {"+", "-"};
+    private static final String[] MULT_OPS = {"*", "/"};
+    private static final String[] COMPARE_OPS = {"<", "<=", ">", ">=", "==", "!="};
+    private static final String[] LOGIC_OPS = {"&&", "||"};
+
+    private Random m_random;
+    private StringBuilder m_code;
+    private int m_remaining;
+    private int m_indent;
+
+    public String generate() {
+        m_random = new Random(seed);
+        m_code = new StringBuilder();
+        m_remaining = statements;
+        m_indent = 0;
+
+        for (int i = 0; i < enums; i++) {
+            enumStmt(i);
+        }
+        while (m_remaining > 0) {
+            statement(0);
+        }
+        return m_code.toString();
+    }
+
+    private void statement(int depth) {
+        m_remaining--;
+        int choice = depth >= nesting ? 0 : m_random.nextInt(12);
+        if (choice < 6) {
+            line(assign(exprDepth) + ";");
+        } else if (choice < 8) {
+            ifStmt(depth);
+        } else if (choice < 9) {
+            whileStmt(depth);
+        } else if (choice < 10) {
+            doWhileStmt(depth);
+        } else if (choice < 11) {
+            forStmt(depth);
+        } else {
+            switchStmt(depth);
+        }
+    }
+
+    private void block(int depth) {
+        m_indent++;
+        int size = 1 + m_random.nextInt(Math.max(1, blockSize));
+        for (int i = 0; i < size && m_remaining > 0; i++) {
+            statement(depth);
+        }
+        m_indent--;
+    }
+
+    private String assign(int depth) {
+        return variable() + " = " + expr(depth);
+    }
+
+    private void ifStmt(int depth) {
+        line("if (" + condition() + ") {");
+        block(depth + 1);
+        if (m_random.nextBoolean()) {
+            line("} else {");
+            block(depth + 1);
+        }
+        line("}");
+    }
+
+    private void whileStmt(int depth) {
+        line("while (" + condition() + ") {");
+        block(depth + 1);
+        line("}");
+    }
+
+    private void doWhileStmt(int depth) {
+        line("do {");
+        block(depth + 1);
+        line("} while (" + condition() + ");");
+    }
+
+    private void forStmt(int depth) {
+        // Each part of the header is optional
+        String init = m_random.nextInt(4) == 0 ? "" : assign(1);
+        String cond = m_random.nextInt(4) == 0 ? "" : condition();
+        String step = m_random.nextInt(4) == 0 ? "" : assign(1);
+        line("for (" + init + "; " + cond + "; " + step + ") {");
+        block(depth + 1);
+        line("}");
+    }
+
+    private void enumStmt(int index) {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < enumValues; i++) {
+            values.append(i == 0 ? "" : ", ").append(enumValue(index, i));
+        }
+        line("enum E" + index + " { " + values + " }");
+    }
+
+    private void switchStmt(int depth) {
+        int e = enums > 0 && enumValues > 0 ? m_random.nextInt(enums) : -1;
+        int count = 1 + m_random.nextInt(Math.max(1, cases));
+
+        line("switch (" + variable() + ") {");
+        m_indent++;
+        for (int i = 0; i < count; i++) {
+            // The cases use the values of an enum when there is one
+            line("case " + (e >= 0 ? enumValue(e, i % enumValues) : String.valueOf(i)) + ":");
+            caseBlock(depth);
+        }
+        if (m_random.nextBoolean()) {
+            line("default:");
+            caseBlock(depth);
+        }
+        m_indent--;
+        line("}");
+    }
+
+    private void caseBlock(int depth) {
+        block(depth + 1);
+        if (m_random.nextBoolean()) {
+            line("    break;");
+        }
+    }
+
+    private String condition() {
+        return logicExpr(exprDepth);
+    }
+
+    private String expr(int depth) {
+        if (arraySize > 0 && depth > 0 && m_random.nextInt(8) == 0) {
+            StringBuilder array = new StringBuilder("[");
+            int size = m_random.nextInt(arraySize + 1);
+            for (int i = 0; i < size; i++) {
+                array.append(i == 0 ? "" : ", ").append(expr(depth - 1));
+            }
+            return array.append("]").toString();
+        }
+        return logicExpr(depth);
+    }
+
+    private String logicExpr(int depth) {
+        if (depth <= 0 || m_random.nextInt(3) != 0) {
+            return compareExpr(depth);
+        }
+        return compareExpr(depth - 1) + " " + pick(LOGIC_OPS) + " " + logicExpr(depth - 1);
+    }
+
+    private String compareExpr(int depth) {
+        if (depth <= 0 || m_random.nextInt(3) != 0) {
+            return addExpr(depth);
+        }
+        return addExpr(depth - 1) + " " + pick(COMPARE_OPS) + " " + addExpr(depth - 1);
+    }
+
+    private String addExpr(int depth) {
+        if (depth <= 0 || m_random.nextInt(5) == 0) {
+            return unaryExpr(depth);
+        }
+        String[] ops = m_random.nextBoolean() ? ADD_OPS : MULT_OPS;
+        return unaryExpr(depth - 1) + " " + pick(ops) + " " + addExpr(depth - 1);
+    }
+
+    private String unaryExpr(int depth) {
+        return m_random.nextInt(8) == 0 ? "-" + unaryExpr(depth) : notExpr(depth);
+    }
+
+    // A minus cannot follow a not, so the not is applied to a parenthesis or a value
+    private String notExpr(int depth) {
+        int choice = m_random.nextInt(8);
+        if (choice == 0) {
+            return "!" + notExpr(depth);
+        } else if (choice < 3 && depth > 0) {
+            return "(" + expr(depth - 1) + ")";
+        }
+        return value();
+    }
+
+    private String value() {
+        switch (m_random.nextInt(3)) {
+            case 0:
+                return String.valueOf(m_random.nextInt(100));
+            case 1:
+                return (1 + m_random.nextInt(99)) + "." + (1 + m_random.nextInt(9));
+            default:
+                return variable();
+        }
+    }
+
+    private String variable() {
+        return "v" + m_random.nextInt(Math.max(1, variables));
+    }
+
+    private static String enumValue(int e, int value) {
+        return "E" + e + "_" + value;
+    }
+
+    private String pick(String[] values) {
+        return values[m_random.nextInt(values.length)];
+    }
+
+    private void line(String text) {
+        for (int i = 0; i < m_indent; i++) {
+            m_code.append("    ");
+        }
+        m_code.append(text).append('\n');
+    }
+
+    // The arguments are:
+    // arg[0] (Optional): The path of the output file, will print to System.out if missing or "-".
+    // The other arguments change the knobs, ex: statements=10000 exprDepth=5 seed=3
+    public static void main(String[] args) throws FileNotFoundException {
+        ProgramGenerator generator = new ProgramGenerator();
+        for (int i = 1; i < args.length; i++) {
+            generator.setKnob(args[i]);
+        }
+
+        String program = generator.generate();
+        if (args.length == 0 || args[0].equals("-")) {
+            System.out.print(program);
+        } else {
+            try (PrintWriter output = new PrintWriter(args[0])) {
+                output.print(program);
+            }
+        }
+    }
+
+    // Change a knob from a "name=value" string
+    public void setKnob(String knob) {
+        int separator = knob.indexOf('=');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + knob);
+        }
+        String name = knob.substring(0, separator);
+        String value = knob.substring(separator + 1);
+        try {
+            Field field = ProgramGenerator.class.getField(name);
+            if (field.getType() == int.class) {
+                field.setInt(this, Integer.parseInt(value));
+            } else {
+                field.setLong(this, Long.parseLong(value));
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Unknown knob " + name);
+        }
+    }
+}
@@ -18,6 +18,9 @@ import analyzer.tests.*;
 
 @Suite.SuiteClasses({
         SyntaxTest.class,
+        RecoveryTest.class,
+        BatchTest.class,
+        MappedCharStreamTest.class,
         // Insert a Test Class here!
 })
 
@@ -0,0 +1,58 @@
+package analyzer.tests;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+
+/**
+ * Description: This test the batch mode (see Main.RunBatch). Every file is parsed in a batch after
+ * a file which does not exist: the batch must go on after a failure, and count both. The expected
+ * file has the number of errors of the batch, then the output written for the file. A file which
+ * cannot be parsed, even when its nesting overflows the stack, has its failure as output.
+ */
+
+@RunWith(Parameterized.class)
+public class BatchTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/BatchTest/data";
+
+    private final File m_file;
+
+    public BatchTest(File file) {
+        super(file);
+        m_file = file;
+    }
+
+    @Test
+    public void run() throws Exception {
+        File missing = new File(m_file.getParentFile(), "missing_" + m_file.getName());
+        File folder = Files.createTempDirectory("batch").toFile();
+        try {
+            int errors = analyzer.Main.RunBatch(Arrays.asList(missing, m_file), folder, 2);
+
+            String failure = new String(Files.readAllBytes(new File(folder, missing.getName()).toPath()));
+            Assert.assertTrue(failure, failure.startsWith(NoSuchFileException.class.getName()));
+
+            m_output.println(errors + " errors");
+            m_output.write(Files.readAllBytes(new File(folder, m_file.getName()).toPath()));
+            m_output.flush();
+        } finally {
+            for (File output : folder.listFiles()) {
+                output.delete();
+            }
+            folder.delete();
+        }
+        assertResult();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -0,0 +1,67 @@
+package analyzer.tests;
+
+import analyzer.ast.ParseException;
+import analyzer.ast.TokenMgrError;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Description: This test Parser.ParseTree(Path), which maps the file in memory (see MappedCharStream).
+ * Every file is parsed from its path and from a stream, in recovery mode: the two parses must give
+ * the same tree, or the same errors at the same positions. The files have unicode escapes, CRLF or
+ * CR line ends, tabs and non-ASCII comments, read as UTF-8 by both parses.
+ */
+
+@RunWith(Parameterized.class)
+public class MappedCharStreamTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/MappedCharStreamTest/data";
+
+    private final File m_file;
+
+    public MappedCharStreamTest(File file) {
+        super(file);
+        m_file = file;
+    }
+
+    @Test
+    public void run() throws Exception {
+        String stream = parse(null);
+        Assert.assertEquals(stream, parse(m_file.toPath()));
+        m_output.print(stream);
+        m_output.flush();
+        assertResult();
+    }
+
+    // The tree of the file, or the messages of all its errors, read from m_input or mapped from path
+    private String parse(Path path) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes);
+        try {
+            List<ParseException> errors = path != null
+                    ? analyzer.Main.RunAll(path, output)
+                    : analyzer.Main.RunAll(m_input, output);
+            for (int i = 0; i < errors.size(); i++) {
+                if (i > 0) {
+                    output.println();
+                }
+                output.print(errors.get(i).getMessage());
+            }
+        } catch (TokenMgrError e) {
+            output.print(e.getMessage());
+        }
+        output.flush();
+        return bytes.toString();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -0,0 +1,44 @@
+package analyzer.tests;
+
+import analyzer.ast.ParseException;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Description: This test the recovery mode of the parser (see Main.RunAll).
+ * Every syntax error of the file is found in a single parse: the expected file has all their
+ * messages, separated by an empty line as in the batch mode. A file without errors prints its tree.
+ */
+
+@RunWith(Parameterized.class)
+public class RecoveryTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/RecoveryTest/data";
+
+    public RecoveryTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        List<ParseException> errors = analyzer.Main.RunAll(m_input, m_output);
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) {
+                m_output.println();
+            }
+            m_output.print(errors.get(i).getMessage());
+        }
+        m_output.flush();
+        assertResult();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -1,6 +1,9 @@
 package analyzer;
 
 import analyzer.ast.*;
+import analyzer.metrics.JsonExporter;
+import analyzer.metrics.Metrics;
+import analyzer.metrics.TextExporter;
 import analyzer.visitors.SemantiqueVisitor;
 
 import java.io.FileNotFoundException;
@@ -22,6 +25,8 @@ public class Main {
     // The arguments are:
     // arg[0] (Required): The path of the input file to parse
     // arg[1] (Optional): The path of the output file, will print to System.out if missing.
+    // With -Danalyzer.metrics=text or -Danalyzer.metrics=json, the metrics of the run (see Metrics)
+    // are printed in System.err.
     public static void main(String[] args) {
         if(args.length <= 0) {
             System.err.println("args[0] is missing! (The file to read)");
@@ -39,10 +44,28 @@ public class Main {
         // For this test we are using the print visitor, but you can change this
         // to whatever you want.
         PrintWriter pw = new PrintWriter(System.out);
+        String export = System.getProperty("analyzer.metrics");
+        if (export == null) {
+            try {
+                Run(new SemantiqueVisitor(pw), file, pw);
+            } catch (ParseException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        Metrics metrics = new Metrics();
         try {
-            Run(new SemantiqueVisitor(pw), file, pw);
+            Run(new SemantiqueVisitor(pw, null, null, metrics), file, pw, metrics);
         } catch (ParseException e) {
             e.printStackTrace();
+        } finally {
+            PrintWriter err = new PrintWriter(System.err);
+            if (export.equals("json")) {
+                new JsonExporter(err).export(metrics);
+            } else {
+                new TextExporter(err).export(metrics);
+            }
         }
     }
 
@@ -59,4 +82,25 @@ public class Main {
         // If the visitor has printed in the output, make sure everything is flushed
         output.flush();
     }
+
+    // Same as Run(), but the time of the parse and of the visit are added to the phases "parse" and
+    // "visit" of metrics
+    public static void Run(ParserVisitor visitor, InputStream input, PrintWriter output, Metrics metrics) throws ParseException {
+        ASTProgram root;
+        Metrics.Phase parse = metrics.start("parse");
+        try {
+            root = Parser.ParseTree(input);
+        } finally {
+            parse.close();
+        }
+
+        Metrics.Phase visit = metrics.start("visit");
+        try {
+            root.jjtAccept(visitor, null);
+        } finally {
+            visit.close();
+        }
+
+        output.flush();
+    }
 }
@@ -2,10 +2,41 @@ package analyzer;
 
 /**
  * Created by febru on 19-02-01.
+ *
+ * The line and the column are the position of the node where the error was found, 0 when the
+ * node has no token (a tree not built by the parser).
  */
 public class SemantiqueError extends Error{
+    private final int m_line;
+    private final int m_column;
+
     public SemantiqueError(String message) {
+        this(message, 0, 0);
+    }
+
+    public SemantiqueError(String message, int line, int column) {
         super(message);
+        m_line = line;
+        m_column = column;
+    }
+
+    // An error without stack trace, much cheaper to create. It is meant to be recorded as a
+    // diagnostic (see SemantiqueVisitor), not to be debugged from its stack.
+    public static SemantiqueError stackless(String message, int line, int column) {
+        return new SemantiqueError(message, line, column, false);
     }
 
+    private SemantiqueError(String message, int line, int column, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+        m_line = line;
+        m_column = column;
+    }
+
+    public int getLine() {
+        return m_line;
+    }
+
+    public int getColumn() {
+        return m_column;
+    }
 }
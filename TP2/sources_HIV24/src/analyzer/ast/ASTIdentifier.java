@@ -19,4 +19,9 @@ public class ASTIdentifier extends SimpleNode {
   private String m_value = null;
   public void setValue(String v) { m_value = v; }
   public String getValue() { return m_value; }
+
+  // The id of the name in the Symbols of the program, NONE if the node was not built by the parser
+  private int m_symbol = Symbols.NONE;
+  public void setSymbol(int s) { m_symbol = s; }
+  public int getSymbol() { return m_symbol; }
 }
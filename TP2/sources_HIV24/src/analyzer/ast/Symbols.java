@@ -0,0 +1,46 @@
+package analyzer.ast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Description: The identifiers of one compilation, each distinct name numbered from 0 in the
+ * order it is first seen by the parser.
+ *
+ * The parser interns every identifier as soon as its token is read (see Identifier() in
+ * Grammaire.jjt), so all the ASTIdentifier of a name share the same String and the same id
+ * (ASTIdentifier.getSymbol()). The ids are dense: a visitor can keep what it knows about the
+ * variables in an array or a BitSet of size size() instead of a map keyed by the names.
+ */
+public final class Symbols {
+
+    public static final int NONE = -1;
+
+    private final HashMap<String, Integer> m_ids = new HashMap<>();
+    private final ArrayList<String> m_names = new ArrayList<>();
+
+    // The id of the name, a new one if the name was never seen
+    public int intern(String name) {
+        Integer id = m_ids.get(name);
+        if (id == null) {
+            id = m_names.size();
+            m_ids.put(name, id);
+            m_names.add(name);
+        }
+        return id;
+    }
+
+    // The id of the name, or NONE if the name is not in the program
+    public int id(String name) {
+        Integer id = m_ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    public String name(int id) {
+        return m_names.get(id);
+    }
+
+    public int size() {
+        return m_names.size();
+    }
+}
@@ -0,0 +1,286 @@
+package analyzer.generator;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Description: Generates random programs following Grammaire.jjt, to test the compiler on inputs
+ * much larger than the test suite.
+ *
+ * The shape of the programs is given by the public fields (the "knobs"), change them before calling
+ * generate(). The same knobs and seed always give the same program.
+ *
+ * When typeCorrect is true, the programs also pass SemantiqueVisitor: every identifier is declared
+ * once before the block, conditions are bool, arithmetic only uses num, enum variables only receive
+ * enum values and each switch uses cases of the type of its identifier. When it is false, the
+ * identifiers and values are picked without looking at their type, so most programs are only
+ * syntactically valid.
+ */
+public class ProgramGenerator {
+
+    // Number of statements in the block, counting the statements nested in if, while and switch
+    public int statements = 100;
+    // Depth of the expression trees, 0 only gives single values
+    public int exprDepth = 3;
+    // Maximum number of if, while and switch nested in each other
+    public int nesting = 2;
+    // Maximum number of statements in the block of an if, while or case
+    public int blockSize = 4;
+    // Number of num variables and of bool variables declared
+    public int variables = 8;
+    // Number of enum types declared, each has enumValues values and one variable
+    public int enums = 2;
+    public int enumValues = 4;
+    // Maximum number of cases in a switch
+    public int cases = 4;
+    public boolean typeCorrect = true;
+    public long seed = 0;
+
+    private static final String[] ADD_OPS = {"+", "-"};
+    private static final String[] MUL_OPS = {"*", "/", "%"};
+    private static final String[] COMPARE_OPS = {"<", "<=", ">", ">=", "==", "!="};
+    private static final String[] BOOL_OPS = {"&&", "||"};
+
+    private Random m_random;
+    private StringBuilder m_code;
+    private int m_remaining;
+    private int m_indent;
+
+    public String generate() {
+        m_random = new Random(seed);
+        m_code = new StringBuilder();
+        m_remaining = statements;
+        m_indent = 0;
+
+        declarations();
+        while (m_remaining > 0) {
+            statement(0);
+        }
+        return m_code.toString();
+    }
+
+    private void declarations() {
+        for (int i = 0; i < variables; i++) {
+            line("num n" + i + ";");
+            line("bool b" + i + ";");
+        }
+        for (int i = 0; i < enums; i++) {
+            StringBuilder values = new StringBuilder();
+            for (int j = 0; j < numEnumValues(); j++) {
+                values.append(j == 0 ? "" : ", ").append(enumValue(i, j));
+            }
+            line("enum E" + i + " {");
+            line("    " + values);
+            line("}");
+            line("E" + i + " e" + i + ";");
+        }
+        line("");
+    }
+
+    private void statement(int depth) {
+        m_remaining--;
+        int choice = depth >= nesting ? 0 : m_random.nextInt(10);
+        if (choice < 5) {
+            assign();
+        } else if (choice < 7) {
+            ifStmt(depth);
+        } else if (choice < 9) {
+            whileStmt(depth);
+        } else {
+            switchStmt(depth);
+        }
+    }
+
+    private void block(int depth) {
+        m_indent++;
+        int size = 1 + m_random.nextInt(Math.max(1, blockSize));
+        for (int i = 0; i < size && m_remaining > 0; i++) {
+            statement(depth);
+        }
+        m_indent--;
+    }
+
+    private void assign() {
+        int choice = m_random.nextInt(enums > 0 ? 5 : 4);
+        if (!typeCorrect) {
+            line(anyIdentifier() + " = " + (m_random.nextBoolean() ? numExpr(exprDepth) : boolExpr(exprDepth)) + ";");
+        } else if (choice < 2 && variables > 0) {
+            line(numVariable() + " = " + numExpr(exprDepth) + ";");
+        } else if (choice < 4 && variables > 0) {
+            line(boolVariable() + " = " + boolExpr(exprDepth) + ";");
+        } else if (enums > 0) {
+            int e = m_random.nextInt(enums);
+            line("e" + e + " = " + enumValue(e, m_random.nextInt(numEnumValues())) + ";");
+        } else {
+            // Nothing to assign: an if with an empty block still uses an expression
+            line("if (" + boolExpr(exprDepth) + ") {");
+            line("}");
+        }
+    }
+
+    private void ifStmt(int depth) {
+        line("if (" + boolExpr(exprDepth) + ") {");
+        block(depth + 1);
+        if (m_random.nextBoolean()) {
+            line("} else {");
+            block(depth + 1);
+        }
+        line("}");
+    }
+
+    private void whileStmt(int depth) {
+        line("while (" + boolExpr(exprDepth) + ") {");
+        block(depth + 1);
+        line("}");
+    }
+
+    private void switchStmt(int depth) {
+        // Switch on an enum variable with its values, or on a num variable with integers
+        boolean onEnum = enums > 0 && (variables == 0 || m_random.nextBoolean());
+        if (!onEnum && variables == 0) {
+            assign();
+            return;
+        }
+        int e = m_random.nextInt(Math.max(1, enums));
+        String identifier = !typeCorrect ? anyIdentifier() : onEnum ? "e" + e : numVariable();
+        int count = 1 + m_random.nextInt(Math.max(1, onEnum ? Math.min(cases, numEnumValues()) : cases));
+
+        line("switch (" + identifier + ") {");
+        m_indent++;
+        for (int i = 0; i < count; i++) {
+            line("case " + (onEnum ? enumValue(e, i) : String.valueOf(i)) + ":");
+            block(depth + 1);
+            if (m_random.nextBoolean()) {
+                line("    break;");
+            }
+        }
+        m_indent--;
+        line("}");
+    }
+
+    private String numExpr(int depth) {
+        if (depth <= 0 || m_random.nextInt(5) == 0) {
+            return (m_random.nextInt(4) == 0 ? "-" : "") + numValue();
+        }
+        String[] ops = m_random.nextBoolean() ? ADD_OPS : MUL_OPS;
+        String expr = numExpr(depth - 1) + " " + pick(ops) + " " + numExpr(depth - 1);
+        return m_random.nextInt(3) == 0 ? (m_random.nextBoolean() ? "-" : "") + "(" + expr + ")" : expr;
+    }
+
+    private String boolExpr(int depth) {
+        if (depth <= 0 || m_random.nextInt(5) == 0) {
+            return (m_random.nextInt(4) == 0 ? "!" : "") + boolValue();
+        }
+        String expr;
+        switch (m_random.nextInt(3)) {
+            case 0:
+                expr = numExpr(depth - 1) + " " + pick(COMPARE_OPS) + " " + numExpr(depth - 1);
+                break;
+            case 1:
+                expr = boolExpr(depth - 1) + " " + pick(BOOL_OPS) + " " + boolExpr(depth - 1);
+                break;
+            default:
+                expr = boolValue() + " " + (m_random.nextBoolean() ? "==" : "!=") + " (" + boolExpr(depth - 1) + ")";
+                break;
+        }
+        return m_random.nextInt(3) == 0 ? (m_random.nextBoolean() ? "!" : "") + "(" + expr + ")" : expr;
+    }
+
+    private String numValue() {
+        if (!typeCorrect && m_random.nextBoolean()) {
+            return anyIdentifier();
+        }
+        return variables > 0 && m_random.nextBoolean() ? numVariable() : String.valueOf(m_random.nextInt(100));
+    }
+
+    private String boolValue() {
+        if (!typeCorrect && m_random.nextBoolean()) {
+            return anyIdentifier();
+        }
+        return variables > 0 && m_random.nextBoolean() ? boolVariable() : String.valueOf(m_random.nextBoolean());
+    }
+
+    private String numVariable() {
+        return "n" + m_random.nextInt(variables);
+    }
+
+    private String boolVariable() {
+        return "b" + m_random.nextInt(variables);
+    }
+
+    // Any declared identifier: variables, enum variables and enum values
+    private String anyIdentifier() {
+        int choice = m_random.nextInt(4);
+        if (enums > 0 && (choice == 2 || variables == 0)) {
+            return "e" + m_random.nextInt(enums);
+        } else if (enums > 0 && choice == 3) {
+            return enumValue(m_random.nextInt(enums), m_random.nextInt(numEnumValues()));
+        } else if (variables > 0) {
+            return choice % 2 == 0 ? numVariable() : boolVariable();
+        }
+        return "undeclared";
+    }
+
+    private int numEnumValues() {
+        // The grammar needs at least one value in an enum
+        return Math.max(1, enumValues);
+    }
+
+    private static String enumValue(int e, int value) {
+        return "E" + e + "_" + value;
+    }
+
+    private String pick(String[] values) {
+        return values[m_random.nextInt(values.length)];
+    }
+
+    private void line(String text) {
+        for (int i = 0; i < m_indent; i++) {
+            m_code.append("    ");
+        }
+        m_code.append(text).append('\n');
+    }
+
+    // The arguments are:
+    // arg[0] (Optional): The path of the output file, will print to System.out if missing or "-".
+    // The other arguments change the knobs, ex: statements=10000 exprDepth=5 typeCorrect=false seed=3
+    public static void main(String[] args) throws FileNotFoundException {
+        ProgramGenerator generator = new ProgramGenerator();
+        for (int i = 1; i < args.length; i++) {
+            generator.setKnob(args[i]);
+        }
+
+        String program = generator.generate();
+        if (args.length == 0 || args[0].equals("-")) {
+            System.out.print(program);
+        } else {
+            try (PrintWriter output = new PrintWriter(args[0])) {
+                output.print(program);
+            }
+        }
+    }
+
+    // Change a knob from a "name=value" string
+    public void setKnob(String knob) {
+        int separator = knob.indexOf('=');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + knob);
+        }
+        String name = knob.substring(0, separator);
+        String value = knob.substring(separator + 1);
+        try {
+            Field field = ProgramGenerator.class.getField(name);
+            if (field.getType() == int.class) {
+                field.setInt(this, Integer.parseInt(value));
+            } else if (field.getType() == long.class) {
+                field.setLong(this, Long.parseLong(value));
+            } else {
+                field.setBoolean(this, Boolean.parseBoolean(value));
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Unknown knob " + name);
+        }
+    }
+}
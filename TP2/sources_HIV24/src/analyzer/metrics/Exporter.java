@@ -0,0 +1,9 @@
+package analyzer.metrics;
+
+/**
+ * Description: Publishes the metrics somewhere: a text report (TextExporter), a JSON document
+ * (JsonExporter) or a JMX MBean (JmxExporter).
+ */
+public interface Exporter {
+    void export(Metrics metrics);
+}
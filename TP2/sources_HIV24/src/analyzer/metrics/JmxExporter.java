@@ -0,0 +1,96 @@
+package analyzer.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Description: Registers the metrics in the platform MBean server, under the given name
+ * (for example "analyzer:type=Metrics"). The MBean is a live view: jconsole or any JMX client
+ * sees the values of the moment, the metrics need to be exported only once. Exporting other
+ * metrics under the same name replaces the previous ones.
+ */
+public class JmxExporter implements Exporter {
+
+    private final ObjectName m_name;
+
+    public JmxExporter(String name) {
+        try {
+            m_name = new ObjectName(name);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid MBean name: " + name, e);
+        }
+    }
+
+    @Override
+    public void export(Metrics metrics) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            try {
+                server.registerMBean(new View(metrics), m_name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(m_name);
+                server.registerMBean(new View(metrics), m_name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register the metrics as " + m_name, e);
+        }
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_name);
+        } catch (JMException e) {
+            // Not registered
+        }
+    }
+
+    private static class View implements MetricsMXBean {
+        private final Metrics m_metrics;
+
+        View(Metrics metrics) {
+            m_metrics = metrics;
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return m_metrics.counters();
+        }
+
+        @Override
+        public Map<String, Long> getVisits() {
+            return m_metrics.visits();
+        }
+
+        @Override
+        public Map<String, Long> getPhaseRuns() {
+            Map<String, Long> runs = new TreeMap<>();
+            for (Map.Entry<String, Metrics.PhaseSnapshot> entry : m_metrics.phases().entrySet()) {
+                runs.put(entry.getKey(), entry.getValue().count);
+            }
+            return runs;
+        }
+
+        @Override
+        public Map<String, Long> getPhaseWallNanos() {
+            Map<String, Long> nanos = new TreeMap<>();
+            for (Map.Entry<String, Metrics.PhaseSnapshot> entry : m_metrics.phases().entrySet()) {
+                nanos.put(entry.getKey(), entry.getValue().wallNanos);
+            }
+            return nanos;
+        }
+
+        @Override
+        public Map<String, Long> getPhaseCpuNanos() {
+            Map<String, Long> nanos = new TreeMap<>();
+            for (Map.Entry<String, Metrics.PhaseSnapshot> entry : m_metrics.phases().entrySet()) {
+                nanos.put(entry.getKey(), entry.getValue().cpuNanos);
+            }
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package analyzer.metrics;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Description: Writes the metrics as one JSON object:
+ *
+ *   {"counters": {"OP": 12, ...},
+ *    "phases": {"parse": {"count": 1, "wallNanos": 81234, "cpuNanos": 80011}, ...},
+ *    "visits": {"AssignStmt": 4, ...}}
+ *
+ * The names are counters, phases and node names, which need no escaping but the quotes and the
+ * backslashes.
+ */
+public class JsonExporter implements Exporter {
+
+    private final PrintWriter m_writer;
+
+    public JsonExporter(PrintWriter writer) {
+        m_writer = writer;
+    }
+
+    @Override
+    public void export(Metrics metrics) {
+        StringBuilder json = new StringBuilder("{\"counters\": ");
+        appendLongs(json, metrics.counters());
+
+        json.append(", \"phases\": {");
+        String separator = "";
+        for (Map.Entry<String, Metrics.PhaseSnapshot> entry : metrics.phases().entrySet()) {
+            Metrics.PhaseSnapshot phase = entry.getValue();
+            json.append(separator);
+            appendName(json, entry.getKey());
+            json.append(": {\"count\": ").append(phase.count)
+                    .append(", \"wallNanos\": ").append(phase.wallNanos)
+                    .append(", \"cpuNanos\": ").append(phase.cpuNanos).append('}');
+            separator = ", ";
+        }
+        json.append('}');
+
+        json.append(", \"visits\": ");
+        appendLongs(json, metrics.visits());
+        json.append('}');
+
+        m_writer.println(json);
+        m_writer.flush();
+    }
+
+    private static void appendLongs(StringBuilder json, Map<String, Long> values) {
+        json.append('{');
+        String separator = "";
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            json.append(separator);
+            appendName(json, entry.getKey());
+            json.append(": ").append(entry.getValue());
+            separator = ", ";
+        }
+        json.append('}');
+    }
+
+    private static void appendName(StringBuilder json, String name) {
+        json.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\');
+            }
+            json.append(c);
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,169 @@
+package analyzer.metrics;
+
+import analyzer.ast.ParserTreeConstants;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description: The metrics of the compiler: named counters, the time spent in every phase and the
+ * number of visits of every kind of node. A visit is a node checked by the visitor, counted once
+ * even when it is read again: on a program without errors, the visits of a kind are the number of
+ * nodes of that kind in the tree.
+ *
+ * Everything is kept in LongAdder, so many threads (the tasks of a parallel check, or the files of
+ * a corpus checked at once) can add to the same Metrics. The hot loops should not touch the adders
+ * for every node: a visitor counts in plain fields and adds its totals once it is done (see
+ * SemantiqueVisitor).
+ *
+ * Usage:
+ *   Metrics metrics = new Metrics();
+ *   Metrics.Phase parse = metrics.start("parse");
+ *   try {
+ *       root = Parser.ParseTree(input);
+ *   } finally {
+ *       parse.close();
+ *   }
+ *   new TextExporter(writer).export(metrics);
+ */
+public class Metrics {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, LongAdder> m_counters = new ConcurrentHashMap<>();
+    private final Map<String, PhaseTime> m_phases = new ConcurrentHashMap<>();
+    private final LongAdder[] m_visits = new LongAdder[ParserTreeConstants.jjtNodeName.length];
+
+    public Metrics() {
+        for (int i = 0; i < m_visits.length; i++) {
+            m_visits[i] = new LongAdder();
+        }
+    }
+
+    public void add(String counter, long value) {
+        m_counters.computeIfAbsent(counter, name -> new LongAdder()).add(value);
+    }
+
+    // The value of the counter, 0 if nothing was added to it
+    public long count(String counter) {
+        LongAdder adder = m_counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    // Add the visits counted by a visitor, indexed by the node ids (see ParserTreeConstants)
+    public void addVisits(long[] visits) {
+        int length = Math.min(visits.length, m_visits.length);
+        for (int id = 0; id < length; id++) {
+            if (visits[id] != 0) {
+                m_visits[id].add(visits[id]);
+            }
+        }
+    }
+
+    public long visits(int id) {
+        return m_visits[id].sum();
+    }
+
+    // Start timing a phase, the time is added when the returned Phase is closed
+    public Phase start(String phase) {
+        return new Phase(m_phases.computeIfAbsent(phase, name -> new PhaseTime()));
+    }
+
+    // Add the counters, the phases and the visits of other to these metrics
+    public void addAll(Metrics other) {
+        for (Map.Entry<String, LongAdder> entry : other.m_counters.entrySet()) {
+            add(entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, PhaseTime> entry : other.m_phases.entrySet()) {
+            m_phases.computeIfAbsent(entry.getKey(), name -> new PhaseTime()).add(entry.getValue());
+        }
+        for (int id = 0; id < m_visits.length; id++) {
+            m_visits[id].add(other.m_visits[id].sum());
+        }
+    }
+
+    // The snapshots below are sorted by name, so the exports are stable
+
+    public Map<String, Long> counters() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : m_counters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counters;
+    }
+
+    // The visits of every kind of node visited at least once, by node name ("IfStmt", "AddExpr"...)
+    public Map<String, Long> visits() {
+        Map<String, Long> visits = new TreeMap<>();
+        for (int id = 0; id < m_visits.length; id++) {
+            long count = m_visits[id].sum();
+            if (count != 0) {
+                visits.put(ParserTreeConstants.jjtNodeName[id], count);
+            }
+        }
+        return visits;
+    }
+
+    public Map<String, PhaseSnapshot> phases() {
+        Map<String, PhaseSnapshot> phases = new TreeMap<>();
+        for (Map.Entry<String, PhaseTime> entry : m_phases.entrySet()) {
+            PhaseTime time = entry.getValue();
+            phases.put(entry.getKey(), new PhaseSnapshot(time.m_count.sum(), time.m_wallNanos.sum(), time.m_cpuNanos.sum()));
+        }
+        return phases;
+    }
+
+    private static long cpuNanos() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static class PhaseTime {
+        final LongAdder m_count = new LongAdder();
+        final LongAdder m_wallNanos = new LongAdder();
+        final LongAdder m_cpuNanos = new LongAdder();
+
+        void add(PhaseTime other) {
+            m_count.add(other.m_count.sum());
+            m_wallNanos.add(other.m_wallNanos.sum());
+            m_cpuNanos.add(other.m_cpuNanos.sum());
+        }
+    }
+
+    /**
+     * One run of a phase, timed from start() to close(). The CPU time is the time of the thread
+     * which started it: a phase must be closed by that thread, and the time of the threads it
+     * starts (the tasks of a parallel check) is not counted.
+     */
+    public static final class Phase implements AutoCloseable {
+        private final PhaseTime m_time;
+        private final long m_startNanos = System.nanoTime();
+        private final long m_startCpuNanos = cpuNanos();
+
+        private Phase(PhaseTime time) {
+            m_time = time;
+        }
+
+        @Override
+        public void close() {
+            m_time.m_wallNanos.add(System.nanoTime() - m_startNanos);
+            m_time.m_cpuNanos.add(cpuNanos() - m_startCpuNanos);
+            m_time.m_count.increment();
+        }
+    }
+
+    public static final class PhaseSnapshot {
+        public final long count;
+        public final long wallNanos;
+        public final long cpuNanos;
+
+        PhaseSnapshot(long count, long wallNanos, long cpuNanos) {
+            this.count = count;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+        }
+    }
+}
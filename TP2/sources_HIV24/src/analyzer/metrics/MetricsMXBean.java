@@ -0,0 +1,18 @@
+package analyzer.metrics;
+
+import java.util.Map;
+
+/**
+ * Description: The view of a Metrics registered by JmxExporter. Every call reads the current values.
+ */
+public interface MetricsMXBean {
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getVisits();
+
+    Map<String, Long> getPhaseRuns();
+
+    Map<String, Long> getPhaseWallNanos();
+
+    Map<String, Long> getPhaseCpuNanos();
+}
@@ -0,0 +1,40 @@
+package analyzer.metrics;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Description: Prints the metrics as a table, one line per counter, phase and kind of node.
+ * The times are in microseconds.
+ */
+public class TextExporter implements Exporter {
+
+    private final PrintWriter m_writer;
+
+    public TextExporter(PrintWriter writer) {
+        m_writer = writer;
+    }
+
+    @Override
+    public void export(Metrics metrics) {
+        m_writer.printf("%-20s %12s%n", "counter", "value");
+        for (Map.Entry<String, Long> entry : metrics.counters().entrySet()) {
+            m_writer.printf("%-20s %12d%n", entry.getKey(), entry.getValue());
+        }
+
+        m_writer.println();
+        m_writer.printf("%-20s %12s %12s %12s%n", "phase", "runs", "wall us", "cpu us");
+        for (Map.Entry<String, Metrics.PhaseSnapshot> entry : metrics.phases().entrySet()) {
+            Metrics.PhaseSnapshot phase = entry.getValue();
+            m_writer.printf("%-20s %12d %12.1f %12.1f%n", entry.getKey(), phase.count, phase.wallNanos / 1000.0,
+                    phase.cpuNanos / 1000.0);
+        }
+
+        m_writer.println();
+        m_writer.printf("%-20s %12s%n", "node", "visits");
+        for (Map.Entry<String, Long> entry : metrics.visits().entrySet()) {
+            m_writer.printf("%-20s %12d%n", entry.getKey(), entry.getValue());
+        }
+        m_writer.flush();
+    }
+}
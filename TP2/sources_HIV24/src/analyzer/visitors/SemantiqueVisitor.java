@@ -2,11 +2,17 @@ package analyzer.visitors;
 
 import analyzer.SemantiqueError;
 import analyzer.ast.*;
+import analyzer.metrics.Metrics;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Created: 19-01-10
@@ -14,23 +20,106 @@ import java.util.Objects;
  * Author: Félix Brunet
  * <p>
  * Description: Ce visiteur explorer l'AST est renvois des erreurs lorsqu'une erreur sémantique est détectée.
+ * <p>
+ * Avec une liste de diagnostics, le visiteur ne s'arrête pas à la première erreur : chaque erreur est
+ * ajoutée à la liste, avec la position de son noeud, et la vérification continue à l'instruction
+ * suivante. Ces erreurs n'ont pas de pile d'appels, une liste de fichiers invalides est donc vérifiée
+ * sans le coût de fillInStackTrace().
+ * <p>
+ * Avec un StatementCache, les instructions du bloc principal déjà vérifiées lors d'une vérification
+ * précédente du même fichier, et dont les identificateurs ont gardé leur type, ne sont pas visitées
+ * de nouveau (voir checkCached).
  */
 
-public class SemantiqueVisitor implements ParserVisitor {
+public class SemantiqueVisitor implements ParserVisitor, ParserTreeConstants {
 
     private final PrintWriter m_writer;
 
-    private HashMap<String, VarType> SymbolTable = new HashMap<>(); // mapping variable -> type
+    // Table des symboles : le type de chaque identificateur, à l'indice de son symbole (voir
+    // ASTIdentifier.getSymbol()), ou null s'il n'est pas déclaré. Le parseur donne déjà un symbole
+    // à chaque identificateur, les vérifications lisent donc le tableau sans hacher les noms.
+    private VarType[] m_types = new VarType[0];
+    private Symbols m_symbols = new Symbols();
+
+    private final TreeWalker m_walker = new TreeWalker();
+    private final ExprTypes m_exprTypes = new ExprTypes();
+
+    // Le pool sur lequel les instructions du bloc principal sont vérifiées (voir checkBlock), null
+    // pour tout vérifier dans le thread du visiteur.
+    private final ForkJoinPool m_pool;
+
+    // Les erreurs trouvées, dans l'ordre du programme, ou null pour lancer la première (voir error())
+    private final List<SemantiqueError> m_diagnostics;
+
+    // Les verdicts des instructions d'une vérification précédente, ou null pour tout vérifier
+    private final StatementCache m_cache;
 
-    // variable pour les metrics
-    public int VAR = 0;
-    public int WHILE = 0;
-    public int IF = 0;
-    public int ENUM_VALUES = 0;
-    public int OP = 0;
+    // Sous ce nombre d'instructions, le bloc principal est vérifié sans le pool
+    private static final int PARALLEL_STATEMENTS = 64;
+    // Le nombre d'instructions vérifiées par une tâche
+    private static final int STATEMENTS_PER_TASK = 16;
+
+    // variable pour les metrics. Elles sont comptées ici, puis ajoutées à m_metrics à la fin du
+    // programme : les LongAdder de Metrics sont trop lents pour être incrémentés à chaque noeud.
+    private int VAR = 0;
+    private int WHILE = 0;
+    private int IF = 0;
+    private int ENUM_VALUES = 0;
+    private int OP = 0;
+
+    // Le nombre de noeuds vérifiés de chaque type, à l'indice de son id (voir ParserTreeConstants).
+    // Chaque noeud est compté une fois, là où il est vérifié : par dispatch(), par ExprTypes pour
+    // les expressions, ou par la visite de son parent pour les identificateurs qu'elle lit directement.
+    private final long[] m_visits = new long[jjtNodeName.length];
+    private final Metrics m_metrics;
 
     public SemantiqueVisitor(PrintWriter writer) {
+        this(writer, defaultPool(), null);
+    }
+
+    public SemantiqueVisitor(PrintWriter writer, ForkJoinPool pool) {
+        this(writer, pool, null);
+    }
+
+    public SemantiqueVisitor(PrintWriter writer, ForkJoinPool pool, List<SemantiqueError> diagnostics) {
+        this(writer, pool, diagnostics, new Metrics());
+    }
+
+    // Les metrics de chaque programme visité sont ajoutées à metrics, qui peut être partagé par
+    // plusieurs visiteurs (les fichiers d'un corpus vérifiés en parallèle par exemple).
+    public SemantiqueVisitor(PrintWriter writer, ForkJoinPool pool, List<SemantiqueError> diagnostics, Metrics metrics) {
+        this(writer, pool, diagnostics, metrics, null);
+    }
+
+    // Le cache est gardé d'une vérification du fichier à la suivante, avec un nouveau visiteur à
+    // chaque fois. Les instructions sont alors vérifiées dans ce thread, sans le pool.
+    public SemantiqueVisitor(PrintWriter writer, ForkJoinPool pool, List<SemantiqueError> diagnostics, Metrics metrics,
+                             StatementCache cache) {
         m_writer = writer;
+        m_pool = pool;
+        m_diagnostics = diagnostics;
+        m_metrics = metrics;
+        m_cache = cache;
+    }
+
+    public Metrics getMetrics() {
+        return m_metrics;
+    }
+
+    private static ForkJoinPool defaultPool() {
+        return Runtime.getRuntime().availableProcessors() > 1 ? ForkJoinPool.commonPool() : null;
+    }
+
+    // Le visiteur d'une tâche de checkBlock : il lit la table des symboles du visiteur principal
+    // sans la modifier, et compte ses propres metrics.
+    private SemantiqueVisitor(SemantiqueVisitor parent) {
+        m_writer = parent.m_writer;
+        m_pool = null;
+        m_diagnostics = parent.m_diagnostics != null ? new ArrayList<>() : null;
+        m_metrics = parent.m_metrics;
+        m_cache = null;
+        m_types = parent.m_types;
+        m_symbols = parent.m_symbols;
     }
 
     /*
@@ -71,6 +160,19 @@ public class SemantiqueVisitor implements ParserVisitor {
     * */
 
 
+    // Visite le noeud en comptant sa visite dans m_visits
+    private Object dispatch(Node node, Object data) {
+        m_visits[((SimpleNode) node).getId()]++;
+        return node.jjtAccept(this, data);
+    }
+
+    private void childrenDispatch(Node node, Object data) {
+        int numChildren = node.jjtGetNumChildren();
+        for (int i = 0; i < numChildren; i++) {
+            dispatch(node.jjtGetChild(i), data);
+        }
+    }
+
     @Override
     public Object visit(SimpleNode node, Object data) {
         return data;
@@ -78,38 +180,347 @@ public class SemantiqueVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTProgram node, Object data) {
-        node.childrenAccept(this, data);
+        m_symbols = node.getSymbols() != null ? node.getSymbols() : new Symbols();
+        m_types = new VarType[m_symbols.size()];
+        m_visits[JJTPROGRAM]++;
+        if (m_cache != null) m_cache.begin();
+        try {
+            int numChildren = node.jjtGetNumChildren();
+            for (int i = 0; i < numChildren; i++) {
+                Node child = node.jjtGetChild(i);
+                if (((SimpleNode) child).getId() == JJTBLOCK) {
+                    checkBlock(child);
+                } else {
+                    checkStatement(child, data);
+                }
+            }
+        } finally {
+            if (m_cache != null) m_cache.end();
+            addMetrics();
+        }
         m_writer.print(String.format("{VAR:%d, WHILE:%d, IF:%d, ENUM_VALUES:%d, OP:%d}", this.VAR, this.WHILE, this.IF, this.ENUM_VALUES, this.OP));
         return null;
     }
 
+    // Ajoute les metrics du programme à m_metrics, même s'il a une erreur
+    private void addMetrics() {
+        m_metrics.add("VAR", VAR);
+        m_metrics.add("WHILE", WHILE);
+        m_metrics.add("IF", IF);
+        m_metrics.add("ENUM_VALUES", ENUM_VALUES);
+        m_metrics.add("OP", OP);
+        m_metrics.addVisits(m_visits);
+    }
+
+    /*
+        Les déclarations du programme sont dans la table des symboles avant son bloc, seul un enum du
+        bloc peut encore la modifier. Les instructions entre deux enums ne font donc que lire la table :
+        elles sont vérifiées en parallèle, par tranches de STATEMENTS_PER_TASK, et une instruction qui
+        déclare un enum est vérifiée seule dans ce thread, après celles qui la précèdent.
+        Les metrics des tâches sont additionnées dans l'ordre du bloc jusqu'à la première instruction
+        en erreur, et l'erreur lancée est la sienne, comme si les instructions étaient vérifiées dans
+        l'ordre.
+     */
+    private void checkBlock(Node block) {
+        m_visits[JJTBLOCK]++;
+        int numChildren = block.jjtGetNumChildren();
+        if (m_cache != null) {
+            for (int i = 0; i < numChildren; i++) {
+                checkCached(block.jjtGetChild(i));
+            }
+            return;
+        }
+        if (m_pool == null || numChildren < PARALLEL_STATEMENTS) {
+            for (int i = 0; i < numChildren; i++) {
+                checkStatement(block.jjtGetChild(i), null);
+            }
+            return;
+        }
+
+        int start = 0;
+        for (int i = 0; i < numChildren; i++) {
+            if (declaresEnum(block.jjtGetChild(i))) {
+                checkInParallel(block, start, i);
+                checkStatement(block.jjtGetChild(i), null);
+                start = i + 1;
+            }
+        }
+        checkInParallel(block, start, numChildren);
+    }
+
+    private void checkInParallel(Node block, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        Check check = m_pool.invoke(new CheckTask(block, from, to));
+        // Les metrics et les visites de la suite s'arrêtent à sa première erreur : elles sont ajoutées
+        // avant de la lancer, comme celles des instructions vérifiées dans l'ordre
+        this.VAR += check.VAR;
+        this.WHILE += check.WHILE;
+        this.IF += check.IF;
+        this.ENUM_VALUES += check.ENUM_VALUES;
+        this.OP += check.OP;
+        for (int id = 0; id < m_visits.length; id++) {
+            m_visits[id] += check.visits[id];
+        }
+        if (m_diagnostics != null) m_diagnostics.addAll(check.diagnostics);
+        if (check.error instanceof RuntimeException) throw (RuntimeException) check.error;
+        if (check.error != null) throw (Error) check.error;
+    }
+
+    /*
+        Une instruction qui ne déclare pas d'enum lit la table des symboles sans la modifier : avec le
+        même texte et les mêmes types pour ses identificateurs, elle a les mêmes erreurs et les mêmes
+        metrics. Son verdict est donc repris du cache quand elle n'a pas changé depuis la vérification
+        précédente et que les types qu'elle a lus sont les mêmes, sinon elle est vérifiée et son
+        nouveau verdict est gardé. Un enum modifie la table, il est toujours vérifié.
+     */
+    private void checkCached(Node node) {
+        Token first = ((SimpleNode) node).jjtGetFirstToken();
+        Token last = ((SimpleNode) node).jjtGetLastToken();
+        boolean diagnostics = m_diagnostics != null;
+        if (first == null || last == null || node.jjtGetNumChildren() == 0) {
+            m_cache.miss();
+            checkStatement(node, null);
+            return;
+        }
+
+        // Le cache n'a pas de verdict pour un enum, le texte identique d'une instruction gardée n'en
+        // déclare pas
+        StatementCache.Verdict verdict = m_cache.get(first, last, diagnostics);
+        if (verdict != null && readsSameTypes(verdict)) {
+            m_cache.reuse(first, verdict);
+            this.VAR += verdict.VAR;
+            this.WHILE += verdict.WHILE;
+            this.IF += verdict.IF;
+            this.ENUM_VALUES += verdict.ENUM_VALUES;
+            this.OP += verdict.OP;
+            for (int id = 0; id < verdict.visits.length; id++) {
+                m_visits[id] += verdict.visits[id];
+            }
+            for (int i = 0; i < verdict.errors(); i++) {
+                if (!diagnostics) throw verdict.error(i, first, false);
+                m_diagnostics.add(verdict.error(i, first, true));
+            }
+            return;
+        }
+
+        if (declaresEnum(node)) {
+            m_cache.miss();
+            checkStatement(node, null);
+            return;
+        }
+
+        LinkedHashMap<String, VarType> reads = readTypes(node);
+        int[] counts = {VAR, WHILE, IF, ENUM_VALUES, OP};
+        long[] visits = m_visits.clone();
+        int before = diagnostics ? m_diagnostics.size() : 0;
+        SemantiqueError thrown = null;
+        try {
+            checkStatement(node, null);
+        } catch (SemantiqueError e) {
+            thrown = e;
+        }
+
+        List<SemantiqueError> errors = Collections.emptyList();
+        if (thrown != null) {
+            errors = Collections.singletonList(thrown);
+        } else if (diagnostics) {
+            errors = m_diagnostics.subList(before, m_diagnostics.size());
+        }
+        counts[0] = VAR - counts[0];
+        counts[1] = WHILE - counts[1];
+        counts[2] = IF - counts[2];
+        counts[3] = ENUM_VALUES - counts[3];
+        counts[4] = OP - counts[4];
+        for (int id = 0; id < visits.length; id++) {
+            visits[id] = m_visits[id] - visits[id];
+        }
+        m_cache.put(first, new StatementCache.Verdict(diagnostics, first, last, reads, counts, visits, errors));
+        if (thrown != null) throw thrown;
+    }
+
+    // Le type de chaque identificateur de l'instruction, dans l'ordre de leur première apparition
+    private LinkedHashMap<String, VarType> readTypes(Node node) {
+        LinkedHashMap<String, VarType> reads = new LinkedHashMap<>();
+        m_walker.walk(node, new TreeWalker.Listener() {
+            @Override
+            public boolean enter(Node child) {
+                return true;
+            }
+
+            @Override
+            public void exit(Node child) {
+                if (child instanceof ASTIdentifier) {
+                    reads.putIfAbsent(((ASTIdentifier) child).getValue(), symbolType(child));
+                }
+            }
+        });
+        return reads;
+    }
+
+    private boolean readsSameTypes(StatementCache.Verdict verdict) {
+        for (int i = 0; i < verdict.names.length; i++) {
+            int slot = m_symbols.id(verdict.names[i]);
+            VarType type = slot != Symbols.NONE && slot < m_types.length ? m_types[slot] : null;
+            if (type != verdict.types[i]) return false;
+        }
+        return true;
+    }
+
+    // Vrai si l'instruction, ou une instruction de ses blocs, est un enum. Une expression ne
+    // contient pas d'instruction, elle n'est pas parcourue.
+    private static boolean declaresEnum(Node node) {
+        switch (((SimpleNode) node).getId()) {
+            case JJTENUMSTMT:
+                return true;
+            case JJTBLOCK:
+            case JJTSTMT:
+            case JJTIFSTMT:
+            case JJTWHILESTMT:
+            case JJTSWITCHSTMT:
+            case JJTCASESTMT:
+                int numChildren = node.jjtGetNumChildren();
+                for (int i = 0; i < numChildren; i++) {
+                    if (declaresEnum(node.jjtGetChild(i))) return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    // Les metrics d'une suite d'instructions, ses diagnostics et la première erreur lancée par la suite
+    private static class Check {
+        int VAR, WHILE, IF, ENUM_VALUES, OP;
+        long[] visits;
+        List<SemantiqueError> diagnostics;
+        Throwable error;
+
+        void add(Check other) {
+            VAR += other.VAR;
+            WHILE += other.WHILE;
+            IF += other.IF;
+            ENUM_VALUES += other.ENUM_VALUES;
+            OP += other.OP;
+            for (int id = 0; id < visits.length; id++) {
+                visits[id] += other.visits[id];
+            }
+        }
+    }
+
+    // Vérifie les instructions [from, to) du bloc, en séparant la suite en deux tant qu'elle est trop longue.
+    // Une ForkJoinTask est Serializable, mais une tâche ne sort jamais du pool : elle n'est pas sérialisée.
+    @SuppressWarnings("serial")
+    private class CheckTask extends RecursiveTask<Check> {
+        private final Node m_block;
+        private final int m_from;
+        private final int m_to;
+
+        CheckTask(Node block, int from, int to) {
+            m_block = block;
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected Check compute() {
+            if (m_to - m_from <= STATEMENTS_PER_TASK) {
+                SemantiqueVisitor worker = new SemantiqueVisitor(SemantiqueVisitor.this);
+                Check check = new Check();
+                try {
+                    for (int i = m_from; i < m_to; i++) {
+                        worker.checkStatement(m_block.jjtGetChild(i), null);
+                    }
+                } catch (RuntimeException | Error e) {
+                    check.error = e;
+                }
+                check.VAR = worker.VAR;
+                check.WHILE = worker.WHILE;
+                check.IF = worker.IF;
+                check.ENUM_VALUES = worker.ENUM_VALUES;
+                check.OP = worker.OP;
+                check.visits = worker.m_visits;
+                check.diagnostics = worker.m_diagnostics;
+                return check;
+            }
+
+            int middle = (m_from + m_to) >>> 1;
+            CheckTask first = new CheckTask(m_block, m_from, middle);
+            first.fork();
+            Check second = new CheckTask(m_block, middle, m_to).compute();
+            Check check = first.join();
+            if (check.error == null) {
+                check.add(second);
+                if (check.diagnostics != null) check.diagnostics.addAll(second.diagnostics);
+                check.error = second.error;
+            }
+            return check;
+        }
+    }
+
+    // Visite une instruction du programme ou d'un bloc. En mode diagnostics, l'erreur de l'instruction
+    // est ajoutée à la liste et la vérification continue avec l'instruction suivante.
+    private void checkStatement(Node node, Object data) {
+        if (m_diagnostics == null) {
+            dispatch(node, data);
+            return;
+        }
+        try {
+            dispatch(node, data);
+        } catch (SemantiqueError e) {
+            m_diagnostics.add(e);
+        }
+    }
+
+    // L'erreur trouvée au noeud, à lancer. En mode diagnostics elle est créée sans pile d'appels.
+    private SemantiqueError error(Node node, String message) {
+        Token token = ((SimpleNode) node).jjtGetFirstToken();
+        int line = token != null ? token.beginLine : 0;
+        int column = token != null ? token.beginColumn : 0;
+        if (m_diagnostics == null) {
+            return new SemantiqueError(message, line, column);
+        }
+        return SemantiqueError.stackless(message, line, column);
+    }
+
+    // Lance l'erreur, ou l'ajoute aux diagnostics pour continuer la vérification du noeud
+    private void report(SemantiqueError error) {
+        if (m_diagnostics == null) {
+            throw error;
+        }
+        m_diagnostics.add(error);
+    }
+
     // Enregistre les variables avec leur type dans la table symbolique.
     @Override
     public Object visit(ASTDeclaration node, Object data) {
+        m_visits[JJTIDENTIFIER] += node.jjtGetNumChildren();
 
         if (node.jjtGetNumChildren() == 2){
             ASTIdentifier childNode1 = (ASTIdentifier) node.jjtGetChild(0);
             ASTIdentifier childNode2 = (ASTIdentifier) node.jjtGetChild(1);
 
-            if(SymbolTable.containsKey(childNode2.getValue())) throw new SemantiqueError(String.format("Identifier %s has multiple declarations", childNode2.getValue()));
-            else if (!SymbolTable.containsKey(childNode1.getValue()) || SymbolTable.get(childNode1.getValue()) != VarType.EnumType){
-                throw new SemantiqueError(String.format("Identifier %s has been declared with the type %s that does not exist", childNode2.getValue(), childNode1.getValue()));
+            if(symbolType(childNode2) != null) throw error(childNode2, String.format("Identifier %s has multiple declarations", childNode2.getValue()));
+            else if (symbolType(childNode1) != VarType.EnumType){
+                throw error(childNode2, String.format("Identifier %s has been declared with the type %s that does not exist", childNode2.getValue(), childNode1.getValue()));
             }
 
-            SymbolTable.put(childNode2.getValue(), VarType.EnumVar);
+            setSymbolType(childNode2, VarType.EnumVar);
         }
         else {
             ASTIdentifier childNode = (ASTIdentifier) node.jjtGetChild(0);
             String varName = (childNode).getValue();
-            if (SymbolTable.containsKey(varName)) {
-                throw new SemantiqueError(String.format("Identifier %s has multiple declarations", varName));
+            int slot = slot(childNode);
+            if (m_types[slot] != null) {
+                throw error(childNode, String.format("Identifier %s has multiple declarations", varName));
             }
             if (Objects.equals(node.getValue(), "bool")) {
-                SymbolTable.put(varName, VarType.Bool);
+                m_types[slot] = VarType.Bool;
             } else if (Objects.equals(node.getValue(), "num")) {
-                SymbolTable.put(varName, VarType.Number);
+                m_types[slot] = VarType.Number;
             } else if (Objects.equals(node.getValue(), "enum")) {
-                SymbolTable.put(varName, VarType.EnumType);
+                m_types[slot] = VarType.EnumType;
             }
         }
         this.VAR++;
@@ -118,27 +529,26 @@ public class SemantiqueVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTBlock node, Object data) {
-        node.childrenAccept(this, data);
+        int numChildren = node.jjtGetNumChildren();
+        for (int i = 0; i < numChildren; i++) {
+            checkStatement(node.jjtGetChild(i), data);
+        }
         return null;
     }
 
     @Override
     public Object visit(ASTStmt node, Object data) {
-        node.childrenAccept(this, data);
+        childrenDispatch(node, data);
         return null;
     }
 
     // Méthode qui pourrait être utile pour vérifier le type d'expression dans une condition.
     private void callChildrenCond(SimpleNode node) {
-        DataStruct d = new DataStruct();
-        node.jjtGetChild(0).jjtAccept(this, d);
-
-        if (d.type != VarType.Bool) throw new SemantiqueError("Invalid type in condition");
+        if (m_exprTypes.typeOf(node.jjtGetChild(0)) != VarType.Bool) report(error(node.jjtGetChild(0), "Invalid type in condition"));
 
         int numChildren = node.jjtGetNumChildren();
         for (int i = 1; i < numChildren; i++) {
-            d = new DataStruct();
-            node.jjtGetChild(i).jjtAccept(this, d);
+            dispatch(node.jjtGetChild(i), null);
         }
     }
 
@@ -161,78 +571,77 @@ public class SemantiqueVisitor implements ParserVisitor {
     // On doit vérifier que le type de la variable est compatible avec celui de l'expression.
     @Override
     public Object visit(ASTAssignStmt node, Object data) {
+        m_visits[JJTIDENTIFIER]++;
         String varNameLeft = ((ASTIdentifier) node.jjtGetChild(0)).getValue();
-        DataStruct rightChild = new DataStruct();
-        node.jjtGetChild(1).jjtAccept(this, rightChild);
-        if (SymbolTable.get(varNameLeft) == VarType.EnumVar && rightChild.type == VarType.EnumValue) return null;
-        if (SymbolTable.get(varNameLeft) != rightChild.type) throw new SemantiqueError(String.format(
+        VarType leftType = symbolType(node.jjtGetChild(0));
+        VarType rightType = m_exprTypes.typeOf(node.jjtGetChild(1));
+        if (leftType == VarType.EnumVar && rightType == VarType.EnumValue) return null;
+        if (leftType != rightType) throw error(node, String.format(
                 "Invalid type in assignation of Identifier %s", varNameLeft));
         return null;
     }
 
     @Override
     public Object visit(ASTEnumStmt node, Object data) {
-        DataStruct d = new DataStruct();
-        d.type = VarType.EnumType;
+        m_visits[JJTIDENTIFIER] += node.jjtGetNumChildren();
         String typeName = ((ASTIdentifier) node.jjtGetChild(0)).getValue();
-        if (SymbolTable.containsKey(typeName)){throw new SemantiqueError(String.format("Identifier %s has multiple declarations", typeName));}
-        SymbolTable.put(typeName, VarType.EnumType);
-        node.jjtGetChild(0).jjtAccept(this, d);
+        int typeSlot = slot(node.jjtGetChild(0));
+        if (m_types[typeSlot] != null){throw error(node.jjtGetChild(0), String.format("Identifier %s has multiple declarations", typeName));}
+        m_types[typeSlot] = VarType.EnumType;
         int numChildren = node.jjtGetNumChildren();
         this.ENUM_VALUES += numChildren - 1;
 
-        d.type = VarType.EnumValue;
-
         for(int i = 1; i < numChildren; i++){
             String CurrentSymbol = ((ASTIdentifier) node.jjtGetChild(i)).getValue();
+            int slot = slot(node.jjtGetChild(i));
 
-            if(SymbolTable.containsKey(CurrentSymbol)){
-                throw new SemantiqueError(String.format("Identifier %s has multiple declarations", CurrentSymbol));
+            if(m_types[slot] != null){
+                throw error(node.jjtGetChild(i), String.format("Identifier %s has multiple declarations", CurrentSymbol));
             }
-            SymbolTable.put(CurrentSymbol, VarType.EnumValue);
-            node.jjtGetChild(i).jjtAccept(this, d);
+            m_types[slot] = VarType.EnumValue;
         }
         return null;
     }
 
+    // Les cases reçoivent dans data le type de la variable du switch (un VarType).
     @Override
     public Object visit(ASTSwitchStmt node, Object data) {
+        m_visits[JJTIDENTIFIER]++;
         int numChildren = node.jjtGetNumChildren();
-        String child = ((ASTIdentifier)node.jjtGetChild(0)).getValue();
-        if (SymbolTable.get(child) != VarType.Number && SymbolTable.get(child) != VarType.EnumVar) throw new SemantiqueError(String.format("Invalid type in switch of Identifier %s", ((ASTIdentifier)node.jjtGetChild(0)).getValue()));
+        VarType childType = symbolType(node.jjtGetChild(0));
+        if (childType != VarType.Number && childType != VarType.EnumVar) throw error(node.jjtGetChild(0), String.format("Invalid type in switch of Identifier %s", ((ASTIdentifier)node.jjtGetChild(0)).getValue()));
 
         for(int i = 1; i < numChildren; i++){
-            DataStruct d = new DataStruct();
-            d.type = SymbolTable.get(child);
-            node.jjtGetChild(i).jjtAccept(this, d);
+            dispatch(node.jjtGetChild(i), childType);
         }
         return null;
     }
 
     @Override
     public Object visit(ASTCaseStmt node, Object data) {
-        DataStruct d = new DataStruct();
         Node childNode = node.jjtGetChild(0);
-        node.jjtGetChild(0).jjtAccept(this, d);
-        if (d.type == VarType.EnumValue) d.type = VarType.EnumVar;
+        VarType caseType = (VarType) dispatch(childNode, null);
+        if (caseType == VarType.EnumValue) caseType = VarType.EnumVar;
 
 
-        if(((DataStruct)data).type != d.type) {
-            if(childNode instanceof ASTIdentifier) throw new SemantiqueError(
+        if(data != caseType) {
+            if(childNode instanceof ASTIdentifier) throw error(childNode,
                     String.format("Invalid type in case of Identifier %s",
                             ((ASTIdentifier) node.jjtGetChild(0)).getValue()));
-            else if (childNode instanceof ASTIntValue) throw new SemantiqueError(
+            else if (childNode instanceof ASTIntValue) throw error(childNode,
                     String.format("Invalid type in case of integer %s",
                             ((ASTIntValue) node.jjtGetChild(0)).getValue()));
         }
-        node.jjtGetChild(1).jjtAccept(this, d);
+        dispatch(node.jjtGetChild(1), data);
         return null;
     }
 
+    // Les visites d'une expression retournent son type (un VarType, null pour un identificateur non
+    // déclaré). Il n'y a donc pas d'objet alloué pour chaque noeud : ExprTypes type le sous-arbre
+    // sur sa propre pile.
     @Override
     public Object visit(ASTExpr node, Object data) {
-        node.childrenAccept(this, data);
-        return null;
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
@@ -245,28 +654,7 @@ public class SemantiqueVisitor implements ParserVisitor {
             - Les opérateurs == et != peuvent être utilisé pour les nombres et les booléens, mais il faut que le type
             soit le même des deux côtés de l'égalité/l'inégalité.
         */
-        int numChildren = node.jjtGetNumChildren();
-
-        if (numChildren == 1) node.childrenAccept(this, data);
-        else if (numChildren > 1){
-            node.jjtGetChild(0).jjtAccept(this, data);
-            DataStruct dataRight = new DataStruct();
-            node.jjtGetChild(1).jjtAccept(this, dataRight);
-            if (((DataStruct)data).type != dataRight.type) throw new SemantiqueError("Invalid type in expression");
-
-            String op = node.getValue();
-            switch (dataRight.type) {
-                case Bool:
-                    if (!(op.equals("==") || op.equals("!="))) throw new SemantiqueError("Invalid type in expression");
-                    break;
-                case Number:
-                    if (op.equals("&&") || op.equals("||") || op.equals("!")) throw new SemantiqueError("Invalid type in expression");
-                    break;
-            }
-            ((DataStruct)data).type = VarType.Bool;
-            this.OP++;
-        }
-        return null;
+        return m_exprTypes.typeOf(node);
     }
 
     /*
@@ -276,50 +664,17 @@ public class SemantiqueVisitor implements ParserVisitor {
      */
     @Override
     public Object visit(ASTAddExpr node, Object data) {
-        int numChildren = node.jjtGetNumChildren();
-        for (int i = 0; i < numChildren; i++) {
-            DataStruct d = new DataStruct();
-            node.jjtGetChild(i).jjtAccept(this, d);
-            this.OP++;
-            if (numChildren > 1) {
-                if(d.type == VarType.Bool) throw new SemantiqueError("Invalid type in expression");
-            }
-            if (d.type != null) ((DataStruct)data).type = d.type;
-        }
-        this.OP--;
-        return null;
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
     public Object visit(ASTMulExpr node, Object data) {
-        int numChildren = node.jjtGetNumChildren();
-        for (int i = 0; i < numChildren; i++) {
-            DataStruct d = new DataStruct();
-            node.jjtGetChild(i).jjtAccept(this, d);
-            this.OP++;
-            if (numChildren > 1) {
-                if(d.type == VarType.Bool) throw new SemantiqueError("Invalid type in expression");
-            }
-            if (d.type != null) ((DataStruct)data).type = d.type;
-        }
-        this.OP--;
-        return null;
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
     public Object visit(ASTBoolExpr node, Object data) {
-        int numChildren = node.jjtGetNumChildren();
-        for (int i = 0; i < numChildren; i++) {
-            DataStruct d = new DataStruct();
-            node.jjtGetChild(i).jjtAccept(this, d);
-            this.OP++;
-            if (numChildren > 1) {
-                if(d.type == VarType.Number) throw new SemantiqueError("Invalid type in expression");
-            }
-            if (d.type != null) ((DataStruct)data).type = d.type;
-        }
-        this.OP--;
-        return null;
+        return m_exprTypes.typeOf(node);
     }
 
     /*
@@ -332,22 +687,12 @@ public class SemantiqueVisitor implements ParserVisitor {
     */
     @Override
     public Object visit(ASTNotExpr node, Object data) {
-        node.jjtGetChild(0).jjtAccept(this, data);
-        if (!node.getOps().isEmpty()){
-            if (((DataStruct)data).type != VarType.Bool) throw new SemantiqueError("Invalid type in expression");
-            this.OP++;
-        }
-        return null;
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
     public Object visit(ASTUnaExpr node, Object data) {
-        node.jjtGetChild(0).jjtAccept(this, data);
-        if (!node.getOps().isEmpty()){
-            if (((DataStruct)data).type != VarType.Number) throw new SemantiqueError("Invalid type in expression");
-            this.OP++;
-        }
-        return null;
+        return m_exprTypes.typeOf(node);
     }
 
     /*
@@ -356,36 +701,156 @@ public class SemantiqueVisitor implements ParserVisitor {
      */
     @Override
     public Object visit(ASTGenValue node, Object data) {
-        node.childrenAccept(this, data);
-        return null;
+        return m_exprTypes.typeOf(node);
     }
 
 
     @Override
     public Object visit(ASTBoolValue node, Object data) {
-        ((DataStruct) data).type = VarType.Bool;
-        return null;
+        return VarType.Bool;
     }
 
     @Override
     public Object visit(ASTIdentifier node, Object data) {
+        return symbolType(node);
+    }
 
-        //if (node.jjtGetParent() instanceof ASTGenValue) {
-            String varName = node.getValue();
-            VarType varType = SymbolTable.get(varName);
+    @Override
+    public Object visit(ASTIntValue node, Object data) {
+        return VarType.Number;
+    }
 
-            ((DataStruct) data).type = varType;
 
+    // Le type d'un identificateur dans la table des symboles, null s'il n'est pas déclaré. La table
+    // n'est pas modifiée, les tâches de checkBlock la lisent en même temps.
+    private VarType symbolType(Node node) {
+        ASTIdentifier identifier = (ASTIdentifier) node;
+        int slot = identifier.getSymbol();
+        if (slot == Symbols.NONE) {
+            slot = m_symbols.id(identifier.getValue());
+        }
+        return slot != Symbols.NONE && slot < m_types.length ? m_types[slot] : null;
+    }
 
-        return null;
+    private void setSymbolType(Node identifier, VarType type) {
+        int slot = slot(identifier);
+        m_types[slot] = type;
     }
 
-    @Override
-    public Object visit(ASTIntValue node, Object data) {
-        ((DataStruct) data).type = VarType.Number;
-        return null;
+    // Le symbole d'un identificateur. Un noeud qui n'a pas été créé par le parseur n'a pas de
+    // symbole : son nom est alors ajouté à la table du programme.
+    private int slot(Node node) {
+        ASTIdentifier identifier = (ASTIdentifier) node;
+        int slot = identifier.getSymbol();
+        if (slot == Symbols.NONE) {
+            slot = m_symbols.intern(identifier.getValue());
+        }
+        if (slot >= m_types.length) {
+            m_types = Arrays.copyOf(m_types, m_symbols.size());
+        }
+        return slot;
     }
 
+    /**
+     * Calcule le type d'une expression avec un parcours itératif (voir TreeWalker), la profondeur
+     * des parenthèses n'est donc pas limitée par la pile d'appels. À sa sortie, chaque noeud
+     * remplace les types de ses enfants sur la pile par le sien, et compte ses opérateurs dans OP.
+     *
+     * Les règles sont celles décrites plus haut pour chaque noeud. Un identifiant non déclaré a le
+     * type null, qui n'est pas une erreur dans une expression.
+     */
+    private class ExprTypes implements TreeWalker.Listener {
+        private VarType[] m_stack = new VarType[16];
+        private int m_size = 0;
+
+        VarType typeOf(Node node) {
+            m_size = 0;
+            m_walker.walk(node, this);
+            return m_stack[0];
+        }
+
+        @Override
+        public boolean enter(Node node) {
+            return true;
+        }
+
+        @Override
+        public void exit(Node node) {
+            int numChildren = node.jjtGetNumChildren();
+            int first = m_size - numChildren;
+            int id = ((SimpleNode) node).getId();
+            m_visits[id]++;
+            switch (id) {
+                case ParserTreeConstants.JJTIDENTIFIER:
+                    push(symbolType(node));
+                    break;
+                case ParserTreeConstants.JJTINTVALUE:
+                    push(VarType.Number);
+                    break;
+                case ParserTreeConstants.JJTBOOLVALUE:
+                    push(VarType.Bool);
+                    break;
+                case ParserTreeConstants.JJTNOTEXPR:
+                    if (!((ASTNotExpr) node).getOps().isEmpty()) {
+                        if (m_stack[first] != VarType.Bool) throw error(node, "Invalid type in expression");
+                        OP++;
+                    }
+                    break;
+                case ParserTreeConstants.JJTUNAEXPR:
+                    if (!((ASTUnaExpr) node).getOps().isEmpty()) {
+                        if (m_stack[first] != VarType.Number) throw error(node, "Invalid type in expression");
+                        OP++;
+                    }
+                    break;
+                case ParserTreeConstants.JJTCOMPEXPR:
+                    if (numChildren > 1) {
+                        VarType left = m_stack[first];
+                        VarType right = m_stack[first + 1];
+                        if (left != right) throw error(node, "Invalid type in expression");
+
+                        String op = ((ASTCompExpr) node).getValue();
+                        switch (right) {
+                            case Bool:
+                                if (!(op.equals("==") || op.equals("!="))) throw error(node, "Invalid type in expression");
+                                break;
+                            case Number:
+                                if (op.equals("&&") || op.equals("||") || op.equals("!")) throw error(node, "Invalid type in expression");
+                                break;
+                        }
+                        m_stack[first] = VarType.Bool;
+                        m_size = first + 1;
+                        OP++;
+                    }
+                    break;
+                case ParserTreeConstants.JJTADDEXPR:
+                case ParserTreeConstants.JJTMULEXPR:
+                case ParserTreeConstants.JJTBOOLEXPR: {
+                    // Le type du dernier opérande typé, les opérandes d'un opérateur doivent être du
+                    // type de l'opérateur
+                    VarType invalid = node instanceof ASTBoolExpr ? VarType.Number : VarType.Bool;
+                    VarType type = null;
+                    for (int i = first; i < m_size; i++) {
+                        if (numChildren > 1 && m_stack[i] == invalid) throw error(node, "Invalid type in expression");
+                        if (m_stack[i] != null) type = m_stack[i];
+                    }
+                    m_stack[first] = type;
+                    m_size = first + 1;
+                    OP += numChildren - 1;
+                    break;
+                }
+                default:
+                    // Expr et GenValue ont le type de leur seul enfant
+                    break;
+            }
+        }
+
+        private void push(VarType type) {
+            if (m_size == m_stack.length) {
+                m_stack = Arrays.copyOf(m_stack, m_size * 2);
+            }
+            m_stack[m_size++] = type;
+        }
+    }
 
     //des outils pour vous simplifier la vie et vous enligner dans le travail
     public enum VarType {
@@ -396,16 +861,4 @@ public class SemantiqueVisitor implements ParserVisitor {
         EnumValue
     }
 
-
-    private class DataStruct {
-        public VarType type;
-
-        public DataStruct() {
-        }
-
-        public DataStruct(VarType p_type) {
-            type = p_type;
-        }
-
-    }
 }
\ No newline at end of file
@@ -0,0 +1,236 @@
+package analyzer.visitors;
+
+import analyzer.SemantiqueError;
+import analyzer.ast.Token;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Les verdicts des instructions du bloc principal d'un programme, gardés d'une
+ * vérification à la suivante par le SemantiqueVisitor (mode éditeur ou surveillance d'un fichier).
+ * <p>
+ * Une instruction qui ne déclare pas d'enum ne fait que lire la table des symboles : son verdict
+ * (ses erreurs et ses metrics) ne dépend que de son texte et du type de chacun de ses
+ * identificateurs. Avant chaque vérification, update() compare le nouveau texte du fichier au
+ * précédent : les lignes du début et de la fin qui n'ont pas changé ont les mêmes instructions,
+ * décalées du nombre de lignes ajoutées ou retirées. Une instruction de ces lignes dont les
+ * identificateurs ont encore les mêmes types reprend son verdict sans être visitée, il suffit de la
+ * chercher par sa position. Seules les instructions des lignes modifiées, et celles qui lisent un
+ * identificateur dont le type a changé, sont vérifiées.
+ * <p>
+ * Usage, à chaque modification du fichier :
+ *   cache.update(source);
+ *   ASTProgram root = Parser.ParseTree(new ByteArrayInputStream(source.getBytes(...)));
+ *   root.jjtAccept(new SemantiqueVisitor(writer, null, diagnostics, metrics, cache), null);
+ * <p>
+ * Une vérification sans update() ne reprend aucun verdict. Le cache est fait pour un fichier et
+ * un visiteur à la fois : il n'est pas thread-safe.
+ */
+public class StatementCache {
+
+    // Les verdicts de la dernière vérification, à la position du premier token de leur instruction
+    private HashMap<Long, Verdict> m_verdicts = new HashMap<>();
+    // Les verdicts repris ou ajoutés pendant la vérification en cours
+    private HashMap<Long, Verdict> m_current = new HashMap<>();
+
+    // Le texte des verdicts, et celui de la prochaine vérification (null si update() n'a pas été appelé)
+    private String m_checked = null;
+    private String m_source = null;
+
+    // Les lignes 1 à m_prefixLines, et les m_suffixLines dernières lignes, n'ont pas changé depuis la
+    // vérification précédente. Les dernières sont décalées de m_lineDelta lignes.
+    private int m_prefixLines = 0;
+    private int m_suffixLines = 0;
+    private int m_lines = 0;
+    private int m_lineDelta = 0;
+
+    private int m_hits = 0;
+    private int m_misses = 0;
+
+    // Le nombre d'instructions reprises du cache et vérifiées pendant la dernière vérification
+    public int hits() {
+        return m_hits;
+    }
+
+    public int misses() {
+        return m_misses;
+    }
+
+    // Le texte du fichier qui va être vérifié
+    public void update(String source) {
+        m_source = source;
+    }
+
+    void begin() {
+        m_current = new HashMap<>();
+        m_hits = 0;
+        m_misses = 0;
+        m_prefixLines = 0;
+        m_suffixLines = 0;
+        m_lines = 0;
+        m_lineDelta = 0;
+        if (m_checked == null || m_source == null) {
+            // Pas de vérification précédente, ou le texte n'est pas connu : aucune ligne n'est sûre
+            return;
+        }
+
+        String source = m_source;
+        int length = Math.min(m_checked.length(), source.length());
+        int prefix = 0;
+        while (prefix < length && m_checked.charAt(prefix) == source.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < length - prefix
+                && m_checked.charAt(m_checked.length() - 1 - suffix) == source.charAt(source.length() - 1 - suffix)) {
+            suffix++;
+        }
+
+        // Une ligne est identique si elle se termine dans le début commun, ou commence après une fin
+        // de ligne de la fin commune
+        m_lines = count(source, 0, source.length()) + 1;
+        m_prefixLines = count(source, 0, prefix);
+        m_suffixLines = count(source, source.length() - suffix, source.length());
+        m_lineDelta = m_lines - (count(m_checked, 0, m_checked.length()) + 1);
+
+        // Un commentaire ouvert ou fermé dans le texte modifié change les tokens de la suite
+        if (comment(m_checked, prefix, m_checked.length() - suffix) || comment(source, prefix, source.length() - suffix)) {
+            m_suffixLines = 0;
+        }
+    }
+
+    // Un programme en erreur n'a pas été vérifié jusqu'au bout : ses dernières instructions n'ont pas
+    // de verdict, la prochaine vérification les vérifiera.
+    void end() {
+        m_verdicts = m_current;
+        m_checked = m_source;
+        m_source = null;
+    }
+
+    // Le nombre de fins de ligne ("\n", "\r\n" ou "\r" comme pour le parseur) dans [from, to)
+    private static int count(String text, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n')) lines++;
+        }
+        return lines;
+    }
+
+    // Vrai si "/*" ou "*/" touche le texte [from, to)
+    private static boolean comment(String text, int from, int to) {
+        for (int i = Math.max(0, from - 1); i < Math.min(text.length() - 1, to); i++) {
+            char c = text.charAt(i);
+            char next = text.charAt(i + 1);
+            if (c == '/' && next == '*' || c == '*' && next == '/') return true;
+        }
+        return false;
+    }
+
+    /*
+        Le verdict de l'instruction qui va du token first au token last, si elle était déjà à la même
+        place (décalée) dans le texte précédent, avec les mêmes tokens. null sinon.
+
+        Les lignes du début n'ont pas changé : une instruction qui s'y termine a les mêmes tokens, mais
+        une instruction précédente pouvait continuer plus loin (un else ajouté après elle par exemple),
+        sa fin est donc comparée. Les lignes de la fin n'ont pas changé jusqu'à la fin du fichier : le
+        parseur y lit les mêmes tokens à partir de la même instruction.
+     */
+    Verdict get(Token first, Token last, boolean diagnostics) {
+        int line;
+        if (last.beginLine <= m_prefixLines) {
+            line = first.beginLine;
+        } else if (m_suffixLines > 0 && first.beginLine > m_lines - m_suffixLines) {
+            line = first.beginLine - m_lineDelta;
+        } else {
+            return null;
+        }
+        Verdict verdict = m_verdicts.get(position(line, first.beginColumn));
+        if (verdict == null || verdict.diagnostics != diagnostics || verdict.lines != last.beginLine - first.beginLine
+                || verdict.lastColumn != last.beginColumn) {
+            return null;
+        }
+        return verdict;
+    }
+
+    // Le verdict est repris pour l'instruction qui commence au token first
+    void reuse(Token first, Verdict verdict) {
+        m_current.put(position(first.beginLine, first.beginColumn), verdict);
+        m_hits++;
+    }
+
+    // L'instruction qui commence au token first a été vérifiée
+    void put(Token first, Verdict verdict) {
+        m_current.put(position(first.beginLine, first.beginColumn), verdict);
+        m_misses++;
+    }
+
+    // Une instruction qui ne peut pas être gardée (sans tokens, ou qui déclare un enum) a été vérifiée
+    void miss() {
+        m_misses++;
+    }
+
+    private static long position(int line, int column) {
+        return (long) line << 32 | column;
+    }
+
+    /**
+     * Le verdict d'une instruction : les types lus (par nom, les symboles changent d'un parse à
+     * l'autre), les metrics et les noeuds comptés, et les erreurs trouvées. Les lignes sont relatives au premier
+     * token de l'instruction, les colonnes ne changent pas quand des lignes sont ajoutées avant elle.
+     */
+    static class Verdict {
+        final boolean diagnostics;
+        final int lines;
+        final int lastColumn;
+
+        final String[] names;
+        final SemantiqueVisitor.VarType[] types;
+        final int VAR, WHILE, IF, ENUM_VALUES, OP;
+        // Les noeuds vérifiés de chaque type (voir SemantiqueVisitor.m_visits)
+        final long[] visits;
+
+        private final String[] m_messages;
+        private final int[] m_lines;
+        private final int[] m_columns;
+
+        Verdict(boolean diagnostics, Token first, Token last, Map<String, SemantiqueVisitor.VarType> reads, int[] counts,
+                long[] visits, List<SemantiqueError> errors) {
+            this.diagnostics = diagnostics;
+            lines = last.beginLine - first.beginLine;
+            lastColumn = last.beginColumn;
+
+            names = reads.keySet().toArray(new String[0]);
+            types = reads.values().toArray(new SemantiqueVisitor.VarType[0]);
+            VAR = counts[0];
+            WHILE = counts[1];
+            IF = counts[2];
+            ENUM_VALUES = counts[3];
+            OP = counts[4];
+            this.visits = visits;
+
+            m_messages = new String[errors.size()];
+            m_lines = new int[errors.size()];
+            m_columns = new int[errors.size()];
+            for (int i = 0; i < errors.size(); i++) {
+                SemantiqueError error = errors.get(i);
+                m_messages[i] = error.getMessage();
+                m_lines[i] = error.getLine() - first.beginLine;
+                m_columns[i] = error.getColumn();
+            }
+        }
+
+        int errors() {
+            return m_messages.length;
+        }
+
+        // La i-ème erreur, dans l'instruction qui commence au token first
+        SemantiqueError error(int i, Token first, boolean stackless) {
+            int line = first.beginLine + m_lines[i];
+            return stackless ? SemantiqueError.stackless(m_messages[i], line, m_columns[i])
+                    : new SemantiqueError(m_messages[i], line, m_columns[i]);
+        }
+    }
+}
@@ -18,6 +18,11 @@ import analyzer.tests.*;
 
 @Suite.SuiteClasses({
         SemantiqueTest.class,
+        DiagnosticsTest.class,
+        MetricsTest.class,
+        StatementCacheTest.class,
+        ParallelTest.class,
+        MappedCharStreamTest.class,
 })
 
 public class TestSuite {
@@ -119,6 +119,11 @@ public class BaseTest {
             return ;
         }
 
+        assertResult();
+    }
+
+    // Assert that what the test printed in m_output matches the expected file
+    protected void assertResult() throws Exception {
         String name = m_file.getName();
         String path = m_file.getParentFile().getParent();
 
@@ -0,0 +1,46 @@
+package analyzer.tests;
+
+import analyzer.SemantiqueError;
+import analyzer.visitors.SemantiqueVisitor;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Description: This test the diagnostics mode of the SemantiqueVisitor. The expected file has the
+ * metrics of the program, then every error found, one per line with its position:
+ *   line:column message
+ * The errors of this mode must have no stack trace.
+ */
+
+@RunWith(Parameterized.class)
+public class DiagnosticsTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/DiagnosticsTest/data";
+
+    public DiagnosticsTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        List<SemantiqueError> diagnostics = new ArrayList<>();
+        analyzer.Main.Run(new SemantiqueVisitor(m_output, null, diagnostics), m_input, m_output);
+        for (SemantiqueError error : diagnostics) {
+            Assert.assertEquals(error.getMessage(), 0, error.getStackTrace().length);
+            m_output.println();
+            m_output.print(error.getLine() + ":" + error.getColumn() + " " + error.getMessage());
+        }
+        m_output.flush();
+        assertResult();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
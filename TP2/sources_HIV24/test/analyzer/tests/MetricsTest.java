@@ -0,0 +1,57 @@
+package analyzer.tests;
+
+import analyzer.SemantiqueError;
+import analyzer.metrics.JsonExporter;
+import analyzer.metrics.Metrics;
+import analyzer.metrics.TextExporter;
+import analyzer.visitors.SemantiqueVisitor;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Description: This test the metrics of the SemantiqueVisitor and their exporters. The expected
+ * file has the output of the visitor (or its error), then the text and the JSON export of the
+ * metrics. The visitor checks the program on a pool, so a long program is checked in parallel:
+ * the metrics must be the same. The phases are not timed here, the times would change at each run.
+ */
+
+@RunWith(Parameterized.class)
+public class MetricsTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/MetricsTest/data";
+
+    public MetricsTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        Metrics metrics = new Metrics();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            analyzer.Main.Run(new SemantiqueVisitor(m_output, pool, null, metrics), m_input, m_output);
+        } catch (SemantiqueError ex) {
+            // The metrics of a program with an error are still added
+            m_output.print(ex.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        m_output.println();
+        m_output.println();
+        new TextExporter(m_output).export(metrics);
+        m_output.println();
+        new JsonExporter(m_output).export(metrics);
+        assertResult();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -0,0 +1,78 @@
+package analyzer.tests;
+
+import analyzer.SemantiqueError;
+import analyzer.metrics.Metrics;
+import analyzer.visitors.SemantiqueVisitor;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Description: This test the parallel check of the SemantiqueVisitor. Every program is long enough
+ * to be checked in parallel: it is checked once without pool, then again on a pool, and the two
+ * checks must give the same output (or error), the same counters and the same visits, also when an
+ * error stops the check. The expected file has the output of the check, then its counters and
+ * its visits.
+ */
+
+@RunWith(Parameterized.class)
+public class ParallelTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/ParallelTest/data";
+
+    public ParallelTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read; (read = m_input.read(buffer)) != -1; ) {
+            bytes.write(buffer, 0, read);
+        }
+        String sequential = check(bytes.toByteArray(), null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assert.assertEquals(sequential, check(bytes.toByteArray(), pool));
+        } finally {
+            pool.shutdown();
+        }
+        m_output.print(sequential);
+        m_output.flush();
+        assertResult();
+    }
+
+    // The output of the visitor (or its error), its counters and its visits
+    private static String check(byte[] source, ForkJoinPool pool) throws Exception {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        Metrics metrics = new Metrics();
+        try {
+            analyzer.Main.Run(new SemantiqueVisitor(writer, pool, null, metrics), new ByteArrayInputStream(source), writer);
+        } catch (SemantiqueError ex) {
+            writer.print(ex.getMessage());
+        }
+        writer.println();
+        writer.println();
+        for (Map.Entry<String, Long> counter : metrics.counters().entrySet()) {
+            writer.println(counter.getKey() + " " + counter.getValue());
+        }
+        writer.println();
+        for (Map.Entry<String, Long> visits : metrics.visits().entrySet()) {
+            writer.println(visits.getKey() + " " + visits.getValue());
+        }
+        writer.flush();
+        return text.toString();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -0,0 +1,83 @@
+package analyzer.tests;
+
+import analyzer.SemantiqueError;
+import analyzer.ast.ASTProgram;
+import analyzer.ast.Parser;
+import analyzer.metrics.Metrics;
+import analyzer.metrics.TextExporter;
+import analyzer.visitors.SemantiqueVisitor;
+import analyzer.visitors.StatementCache;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Description: This test the StatementCache of the SemantiqueVisitor (the editor mode).
+ * The data file has the successive versions of a program, separated by a line "=====". Every
+ * version is checked with the cache kept from the previous one, then again without cache: the two
+ * checks must give the same output, errors and metrics. The expected file has, for every version,
+ * the number of statements taken from the cache and checked, then the output of the check.
+ */
+
+@RunWith(Parameterized.class)
+public class StatementCacheTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/StatementCacheTest/data";
+
+    public StatementCacheTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read; (read = m_input.read(buffer)) != -1; ) {
+            bytes.write(buffer, 0, read);
+        }
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        String[] versions = text.split("(?m)^=====\\R");
+        StatementCache cache = new StatementCache();
+        for (int i = 0; i < versions.length; i++) {
+            cache.update(versions[i]);
+            String incremental = check(versions[i], cache);
+            Assert.assertEquals("Version " + (i + 1), check(versions[i], null), incremental);
+            if (i > 0) {
+                m_output.println();
+                m_output.println();
+            }
+            m_output.println("Version " + (i + 1) + ": " + cache.hits() + " hits, " + cache.misses() + " misses");
+            m_output.print(incremental);
+        }
+        m_output.flush();
+        assertResult();
+    }
+
+    // The output of the visitor, its errors and its metrics
+    private static String check(String source, StatementCache cache) throws Exception {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        List<SemantiqueError> diagnostics = new ArrayList<>();
+        Metrics metrics = new Metrics();
+        ASTProgram root = Parser.ParseTree(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)));
+        root.jjtAccept(new SemantiqueVisitor(writer, null, diagnostics, metrics, cache), null);
+        for (SemantiqueError error : diagnostics) {
+            writer.println();
+            writer.print(error.getLine() + ":" + error.getColumn() + " " + error.getMessage());
+        }
+        writer.println();
+        new TextExporter(writer).export(metrics);
+        writer.flush();
+        return text.toString();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -1,11 +1,14 @@
 package analyzer;
 
 import analyzer.ast.*;
+import analyzer.prelude.Prelude;
 import analyzer.visitors.SemantiqueVisitor;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 
 /**
  * Created: 17-08-02
@@ -22,6 +25,7 @@ public class Main {
     // The arguments are:
     // arg[0] (Required): The path of the input file to parse
     // arg[1] (Optional): The path of the output file, will print to System.out if missing.
+    // With -Danalyzer.prelude=<path>, the file imports the prelude compiled at path (see Prelude).
     public static void main(String[] args) {
         if(args.length <= 0) {
             System.err.println("args[0] is missing! (The file to read)");
@@ -36,11 +40,22 @@ public class Main {
             return;
         }
 
+        Prelude prelude = Prelude.EMPTY;
+        String preludePath = System.getProperty("analyzer.prelude");
+        if (preludePath != null) {
+            try {
+                prelude = Prelude.load(Paths.get(preludePath));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+
         // For this test we are using the print visitor, but you can change this
         // to whatever you want.
         PrintWriter pw = new PrintWriter(System.out);
         try {
-            Run(new SemantiqueVisitor(pw), file, pw);
+            Run(new SemantiqueVisitor(pw, prelude), file, pw);
         } catch (ParseException e) {
             e.printStackTrace();
         }
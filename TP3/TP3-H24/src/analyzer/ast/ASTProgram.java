@@ -0,0 +1,22 @@
+package analyzer.ast;/* Generated By:JJTree: Do not edit this line. ASTProgram.java */
+
+public class ASTProgram extends SimpleNode {
+  public ASTProgram(int id) {
+    super(id);
+  }
+
+  public ASTProgram(Parser p, int id) {
+    super(p, id);
+  }
+
+
+  /** Accept the visitor. **/
+  public Object jjtAccept(ParserVisitor visitor, Object data) {
+    return visitor.visit(this, data);
+  }
+
+  // The identifiers of the program (see Symbols)
+  private Symbols m_symbols = new Symbols();
+  public void setSymbols(Symbols s) { m_symbols = s; }
+  public Symbols getSymbols() { return m_symbols; }
+}
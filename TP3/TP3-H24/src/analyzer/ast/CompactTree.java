@@ -0,0 +1,580 @@
+package analyzer.ast;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Description: A compact copy of an AST, kept in parallel arrays of int instead of one object per node.
+ *
+ * The nodes are numbered in preorder, the root is node 0. For every node we keep:
+ *  - kind        : the id of the node (see ParserTreeConstants)
+ *  - firstChild  : the first child of the node, or NONE
+ *  - nextSibling : the next child of the same parent, or NONE
+ *  - valueId     : the value of the node in the value table, or NONE
+ *
+ * The values (identifier names, integers, booleans, operators and vectors of operators) are
+ * interned: the same identifier used many times is stored only once. A Cursor walks the tree
+ * without allocating.
+ *
+ * A compact tree can be written to a binary stream and read back, and toTree() rebuilds the
+ * nodes of the parser from it (see analyzer.cache.AstCache).
+ */
+public final class CompactTree implements ParserTreeConstants {
+
+    public static final int NONE = -1;
+
+    // Tags of the values in the binary format
+    private static final int STRING = 0;
+    private static final int INTEGER = 1;
+    private static final int BOOLEAN = 2;
+    private static final int OPS = 3;
+
+    private final int[] m_kind;
+    private final int[] m_firstChild;
+    private final int[] m_nextSibling;
+    private final int[] m_valueId;
+    private final Object[] m_values;
+
+    private CompactTree(int[] kind, int[] firstChild, int[] nextSibling, int[] valueId, Object[] values) {
+        m_kind = kind;
+        m_firstChild = firstChild;
+        m_nextSibling = nextSibling;
+        m_valueId = valueId;
+        m_values = values;
+    }
+
+    /**
+     * Copy the tree under the given root. The tree is walked with an explicit stack, so deep
+     * trees (deeply nested parentheses) do not overflow the call stack.
+     */
+    public static CompactTree of(Node root) {
+        int size = count(root);
+        int[] kind = new int[size];
+        int[] firstChild = new int[size];
+        int[] nextSibling = new int[size];
+        int[] valueId = new int[size];
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(nextSibling, NONE);
+
+        HashMap<Object, Integer> interned = new HashMap<>();
+        ArrayList<Object> values = new ArrayList<>();
+
+        // Last child numbered so far for every node, used to link the next one
+        int[] lastChild = new int[size];
+        Arrays.fill(lastChild, NONE);
+
+        // Nodes waiting for a number, with the number of their parent
+        Node[] stack = new Node[16];
+        int[] parents = new int[16];
+        int sp = 0;
+        stack[sp] = root;
+        parents[sp] = NONE;
+        sp++;
+
+        int next = 0;
+        while (sp > 0) {
+            sp--;
+            Node node = stack[sp];
+            int parent = parents[sp];
+            stack[sp] = null;
+            int index = next++;
+
+            kind[index] = ((SimpleNode) node).getId();
+            valueId[index] = intern(valueOf(node), interned, values);
+            if (parent != NONE) {
+                if (lastChild[parent] == NONE) {
+                    firstChild[parent] = index;
+                } else {
+                    nextSibling[lastChild[parent]] = index;
+                }
+                lastChild[parent] = index;
+            }
+
+            // The children are pushed in reverse order so they come out in order
+            int numChildren = node.jjtGetNumChildren();
+            if (sp + numChildren > stack.length) {
+                int length = Math.max(stack.length * 2, sp + numChildren);
+                stack = Arrays.copyOf(stack, length);
+                parents = Arrays.copyOf(parents, length);
+            }
+            for (int i = numChildren - 1; i >= 0; i--) {
+                stack[sp] = node.jjtGetChild(i);
+                parents[sp] = index;
+                sp++;
+            }
+        }
+
+        return new CompactTree(kind, firstChild, nextSibling, valueId, values.toArray());
+    }
+
+    private static int count(Node root) {
+        int count = 0;
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.remove(stack.size() - 1);
+            count++;
+            for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                stack.add(node.jjtGetChild(i));
+            }
+        }
+        return count;
+    }
+
+    // The value carried by a node, or null if this kind of node does not carry one
+    private static Object valueOf(Node node) {
+        if (node instanceof ASTIdentifier) return ((ASTIdentifier) node).getValue();
+        if (node instanceof ASTIntValue) return ((ASTIntValue) node).getValue();
+        if (node instanceof ASTBoolValue) return ((ASTBoolValue) node).getValue();
+        if (node instanceof ASTDeclaration) return ((ASTDeclaration) node).getValue();
+        if (node instanceof ASTCompExpr) return ((ASTCompExpr) node).getValue();
+        if (node instanceof ASTExpr) return ((ASTExpr) node).getValue();
+        if (node instanceof ASTAddExpr) return ops(((ASTAddExpr) node).getOps());
+        if (node instanceof ASTMulExpr) return ops(((ASTMulExpr) node).getOps());
+        if (node instanceof ASTBoolExpr) return ops(((ASTBoolExpr) node).getOps());
+        if (node instanceof ASTUnaExpr) return ops(((ASTUnaExpr) node).getOps());
+        if (node instanceof ASTNotExpr) return ops(((ASTNotExpr) node).getOps());
+        return null;
+    }
+
+    private static Object ops(Vector<?> ops) {
+        return ops.isEmpty() ? null : Collections.unmodifiableList(new ArrayList<>(ops));
+    }
+
+    private static int intern(Object value, HashMap<Object, Integer> interned, ArrayList<Object> values) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer id = interned.get(value);
+        if (id == null) {
+            id = values.size();
+            interned.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    public int size() {
+        return m_kind.length;
+    }
+
+    public int root() {
+        return 0;
+    }
+
+    public int kind(int node) {
+        return m_kind[node];
+    }
+
+    public String name(int node) {
+        return jjtNodeName[m_kind[node]];
+    }
+
+    public int firstChild(int node) {
+        return m_firstChild[node];
+    }
+
+    public int nextSibling(int node) {
+        return m_nextSibling[node];
+    }
+
+    public int valueId(int node) {
+        return m_valueId[node];
+    }
+
+    // The value of the node (String, Integer, Boolean or List<String> of operators), or null
+    public Object value(int node) {
+        int id = m_valueId[node];
+        return id == NONE ? null : m_values[id];
+    }
+
+    public int numChildren(int node) {
+        int count = 0;
+        for (int child = m_firstChild[node]; child != NONE; child = m_nextSibling[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    // Number of distinct values in the value table
+    public int numValues() {
+        return m_values.length;
+    }
+
+    /**
+     * Rebuild the nodes of the parser, with their values and their parent links. The result is
+     * the same tree as the one given to of(). The identifiers are interned again in preorder,
+     * the order of the parser, so they get the same symbol ids.
+     */
+    public Node toTree() {
+        int size = m_kind.length;
+        Node[] nodes = new Node[size];
+        Symbols symbols = new Symbols();
+        for (int i = 0; i < size; i++) {
+            nodes[i] = newNode(m_kind[i], value(i), symbols);
+        }
+        if (nodes[0] instanceof ASTProgram) {
+            ((ASTProgram) nodes[0]).setSymbols(symbols);
+        }
+        Node[] children = new Node[16];
+        for (int i = 0; i < size; i++) {
+            int numChildren = 0;
+            for (int child = m_firstChild[i]; child != NONE; child = m_nextSibling[child]) {
+                if (numChildren == children.length) {
+                    children = Arrays.copyOf(children, numChildren * 2);
+                }
+                children[numChildren++] = nodes[child];
+            }
+            // The last child is added first, so the children array of the node is allocated once
+            for (int k = numChildren - 1; k >= 0; k--) {
+                nodes[i].jjtAddChild(children[k], k);
+                children[k].jjtSetParent(nodes[i]);
+            }
+        }
+        return nodes[0];
+    }
+
+    private static Node newNode(int kind, Object value, Symbols symbols) {
+        switch (kind) {
+            case JJTPROGRAM: return new ASTProgram(kind);
+            case JJTDECLARATION: {
+                ASTDeclaration node = new ASTDeclaration(kind);
+                node.setValue((String) value);
+                return node;
+            }
+            case JJTBLOCK: return new ASTBlock(kind);
+            case JJTSTMT: return new ASTStmt(kind);
+            case JJTIFSTMT: return new ASTIfStmt(kind);
+            case JJTWHILESTMT: return new ASTWhileStmt(kind);
+            case JJTFORSTMT: return new ASTForStmt(kind);
+            case JJTASSIGNSTMT: return new ASTAssignStmt(kind);
+            case JJTENUMSTMT: return new ASTEnumStmt(kind);
+            case JJTSWITCHSTMT: return new ASTSwitchStmt(kind);
+            case JJTBREAKSTMT: return new ASTBreakStmt(kind);
+            case JJTCASESTMT: return new ASTCaseStmt(kind);
+            case JJTEXPR: {
+                ASTExpr node = new ASTExpr(kind);
+                node.setValue((String) value);
+                return node;
+            }
+            case JJTBOOLEXPR: {
+                ASTBoolExpr node = new ASTBoolExpr(kind);
+                for (String op : ops(value)) node.addOp(op);
+                return node;
+            }
+            case JJTCOMPEXPR: {
+                ASTCompExpr node = new ASTCompExpr(kind);
+                node.setValue((String) value);
+                return node;
+            }
+            case JJTADDEXPR: {
+                ASTAddExpr node = new ASTAddExpr(kind);
+                for (String op : ops(value)) node.addOp(op);
+                return node;
+            }
+            case JJTMULEXPR: {
+                ASTMulExpr node = new ASTMulExpr(kind);
+                for (String op : ops(value)) node.addOp(op);
+                return node;
+            }
+            case JJTUNAEXPR: {
+                ASTUnaExpr node = new ASTUnaExpr(kind);
+                for (String op : ops(value)) node.addOp(op);
+                return node;
+            }
+            case JJTNOTEXPR: {
+                ASTNotExpr node = new ASTNotExpr(kind);
+                for (String op : ops(value)) node.addOp(op);
+                return node;
+            }
+            case JJTGENVALUE: return new ASTGenValue(kind);
+            case JJTBOOLVALUE: {
+                ASTBoolValue node = new ASTBoolValue(kind);
+                node.setValue((Boolean) value);
+                return node;
+            }
+            case JJTIDENTIFIER: {
+                ASTIdentifier node = new ASTIdentifier(kind);
+                int id = symbols.intern((String) value);
+                node.setValue(symbols.name(id));
+                node.setSymbol(id);
+                return node;
+            }
+            case JJTINTVALUE: {
+                ASTIntValue node = new ASTIntValue(kind);
+                node.setValue((Integer) value);
+                return node;
+            }
+            default:
+                throw new IllegalStateException("Unknown node id " + kind);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> ops(Object value) {
+        return value == null ? Collections.<String>emptyList() : (List<String>) value;
+    }
+
+    /**
+     * Write the tree: the number of nodes, then for every node in preorder its kind, its number
+     * of children and its value id, then the value table. The numbers are written as varints and
+     * the strings in UTF-8 after their length.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        writeVarInt(out, m_kind.length);
+        for (int i = 0; i < m_kind.length; i++) {
+            writeVarInt(out, m_kind[i]);
+            writeVarInt(out, numChildren(i));
+            writeVarInt(out, m_valueId[i] + 1);
+        }
+
+        writeVarInt(out, m_values.length);
+        for (Object value : m_values) {
+            if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                List<String> ops = ops(value);
+                out.writeByte(OPS);
+                writeVarInt(out, ops.size());
+                for (String op : ops) {
+                    writeString(out, op);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a tree written by write(), from the position of the buffer. Throws an IOException if
+     * the buffer does not contain a valid tree.
+     */
+    public static CompactTree read(ByteBuffer in) throws IOException {
+        try {
+            return readTree(in);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated tree");
+        }
+    }
+
+    private static CompactTree readTree(ByteBuffer in) throws IOException {
+        int size = readVarInt(in);
+        if (size <= 0 || size > in.remaining()) {
+            throw new IOException("Invalid tree size " + size);
+        }
+        int[] kind = new int[size];
+        int[] firstChild = new int[size];
+        int[] nextSibling = new int[size];
+        int[] valueId = new int[size];
+        int[] numChildren = new int[size];
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(nextSibling, NONE);
+
+        // The parents still waiting for children, with the last child linked so far
+        int[] stack = new int[16];
+        int[] lastChild = new int[16];
+        int sp = 0;
+
+        for (int i = 0; i < size; i++) {
+            kind[i] = readVarInt(in);
+            numChildren[i] = readVarInt(in);
+            valueId[i] = readVarInt(in) - 1;
+            if (kind[i] < 0 || kind[i] >= jjtNodeName.length) {
+                throw new IOException("Invalid node id " + kind[i]);
+            }
+
+            if (i > 0) {
+                if (sp == 0) {
+                    throw new IOException("Node " + i + " has no parent");
+                }
+                int parent = stack[sp - 1];
+                if (lastChild[sp - 1] == NONE) {
+                    firstChild[parent] = i;
+                } else {
+                    nextSibling[lastChild[sp - 1]] = i;
+                }
+                lastChild[sp - 1] = i;
+                if (--numChildren[parent] == 0) {
+                    sp--;
+                }
+            }
+            if (numChildren[i] > 0) {
+                if (sp == stack.length) {
+                    stack = Arrays.copyOf(stack, sp * 2);
+                    lastChild = Arrays.copyOf(lastChild, sp * 2);
+                }
+                stack[sp] = i;
+                lastChild[sp] = NONE;
+                sp++;
+            }
+        }
+        if (sp != 0) {
+            throw new IOException("Missing nodes in the tree");
+        }
+
+        int numValues = readVarInt(in);
+        if (numValues < 0 || numValues > in.remaining()) {
+            throw new IOException("Invalid number of values " + numValues);
+        }
+        Object[] values = new Object[numValues];
+        for (int i = 0; i < values.length; i++) {
+            int tag = in.get();
+            switch (tag) {
+                case STRING:
+                    values[i] = readString(in);
+                    break;
+                case INTEGER:
+                    values[i] = in.getInt();
+                    break;
+                case BOOLEAN:
+                    values[i] = in.get() != 0;
+                    break;
+                case OPS:
+                    int numOps = readVarInt(in);
+                    if (numOps < 0 || numOps > in.remaining()) {
+                        throw new IOException("Invalid number of operators " + numOps);
+                    }
+                    String[] ops = new String[numOps];
+                    for (int k = 0; k < ops.length; k++) {
+                        ops[k] = readString(in);
+                    }
+                    values[i] = Collections.unmodifiableList(Arrays.asList(ops));
+                    break;
+                default:
+                    throw new IOException("Invalid value tag " + tag);
+            }
+        }
+        for (int id : valueId) {
+            if (id < NONE || id >= values.length) {
+                throw new IOException("Invalid value id " + id);
+            }
+        }
+
+        return new CompactTree(kind, firstChild, nextSibling, valueId, values);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Walks the tree. The cursor is on one node at a time and keeps the path from the root
+     * to this node, so it can go back to the parent.
+     */
+    public final class Cursor {
+        private int[] m_path = new int[16];
+        private int m_depth = 0;
+
+        private Cursor() {
+            m_path[0] = 0;
+        }
+
+        public int node() {
+            return m_path[m_depth];
+        }
+
+        public int kind() {
+            return m_kind[node()];
+        }
+
+        public Object value() {
+            return CompactTree.this.value(node());
+        }
+
+        public int depth() {
+            return m_depth;
+        }
+
+        public boolean toFirstChild() {
+            int child = m_firstChild[node()];
+            if (child == NONE) {
+                return false;
+            }
+            if (++m_depth == m_path.length) {
+                m_path = Arrays.copyOf(m_path, m_path.length * 2);
+            }
+            m_path[m_depth] = child;
+            return true;
+        }
+
+        public boolean toNextSibling() {
+            int sibling = m_nextSibling[node()];
+            if (m_depth == 0 || sibling == NONE) {
+                return false;
+            }
+            m_path[m_depth] = sibling;
+            return true;
+        }
+
+        public boolean toParent() {
+            if (m_depth == 0) {
+                return false;
+            }
+            m_depth--;
+            return true;
+        }
+
+        // Move to the next node in preorder, returns false after the last node
+        public boolean next() {
+            if (toFirstChild()) {
+                return true;
+            }
+            do {
+                if (toNextSibling()) {
+                    return true;
+                }
+            } while (toParent());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package analyzer.ast;
+
+import java.util.Arrays;
+
+/**
+ * Description: Walks a tree depth first with an explicit stack instead of the call stack, so the
+ * depth of the tree (nested parentheses, nested blocks) is not limited by the stack of the thread.
+ *
+ * The listener is called when the walk enters a node, before its children, and when it exits the
+ * node, after all its children. A visitor computing a value from the values of the children (the
+ * type of an expression for example) keeps these values on its own stack: exit() pops the values
+ * of the children and pushes the value of the node.
+ *
+ * A walker keeps its stack between the walks, so it can be reused to walk many small trees
+ * without allocating. It must not be used by two threads at once.
+ */
+public final class TreeWalker {
+
+    public interface Listener {
+        // Returns false to skip the children of the node, exit() is still called
+        boolean enter(Node node);
+
+        void exit(Node node);
+    }
+
+    // The nodes entered and not exited yet, with the index of their next child to walk
+    private Node[] m_nodes = new Node[32];
+    private int[] m_next = new int[32];
+
+    public void walk(Node root, Listener listener) {
+        int sp = 0;
+        try {
+            if (listener.enter(root)) {
+                m_nodes[0] = root;
+                m_next[0] = 0;
+                sp = 1;
+            } else {
+                listener.exit(root);
+            }
+
+            while (sp > 0) {
+                Node node = m_nodes[sp - 1];
+                int next = m_next[sp - 1];
+                if (next == node.jjtGetNumChildren()) {
+                    sp--;
+                    m_nodes[sp] = null;
+                    listener.exit(node);
+                    continue;
+                }
+
+                m_next[sp - 1] = next + 1;
+                Node child = node.jjtGetChild(next);
+                if (!listener.enter(child)) {
+                    listener.exit(child);
+                    continue;
+                }
+                if (sp == m_nodes.length) {
+                    m_nodes = Arrays.copyOf(m_nodes, sp * 2);
+                    m_next = Arrays.copyOf(m_next, sp * 2);
+                }
+                m_nodes[sp] = child;
+                m_next[sp] = 0;
+                sp++;
+            }
+        } finally {
+            // A listener can stop the walk with an exception, the nodes are not kept alive
+            Arrays.fill(m_nodes, 0, sp, null);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package analyzer.cache;
+
+import analyzer.ast.ASTProgram;
+import analyzer.ast.CompactTree;
+import analyzer.ast.ParseException;
+import analyzer.ast.Parser;
+import analyzer.ast.ParserTreeConstants;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Description: A cache of parsed trees on disk, placed in front of Parser.ParseTree.
+ *
+ * The key of an entry is the SHA-256 of the source, so an unchanged file is found again whatever
+ * its name or date. An entry holds the tree as a CompactTree (node ids, values and operators),
+ * which is rebuilt into nodes on a hit without running the parser. Sources that do not parse
+ * are not cached, their ParseException is thrown every time.
+ *
+ * The total size of the entries is bounded: when a new entry goes over the limit, the entries
+ * used the longest time ago are deleted. The date of an entry is updated on every hit.
+ * Every entry ends with a CRC32 of its content: a damaged or outdated entry is deleted and
+ * counted as a miss. Many threads (or processes) can use the same folder: the entries are
+ * written in a temporary file and then moved in place.
+ */
+public class AstCache {
+
+    // Start of every entry, followed by the version of the format. The version 2 has the flat
+    // n-ary BoolExpr, AddExpr and MulExpr, the entries of the right-recursive trees are outdated
+    private static final int MAGIC = 0x41535443;
+    private static final int VERSION = 2;
+
+    private static final String EXTENSION = ".ast";
+
+    // The node ids come from the grammar, so a change in the grammar must change the keys
+    private static final byte[] GRAMMAR = String.join(",", ParserTreeConstants.jjtNodeName).getBytes(StandardCharsets.UTF_8);
+
+    private final Path m_folder;
+    private final long m_maxBytes;
+    private final AtomicLong m_size = new AtomicLong();
+
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+
+    public AstCache(Path folder, long maxBytes) throws IOException {
+        m_folder = folder;
+        m_maxBytes = maxBytes;
+        Files.createDirectories(folder);
+        for (Entry entry : entries()) {
+            m_size.addAndGet(entry.size);
+        }
+    }
+
+    public ASTProgram parse(Path file) throws ParseException, IOException {
+        return parse(Files.readAllBytes(file));
+    }
+
+    // Return the tree of the source, from the cache if it was already parsed
+    public ASTProgram parse(byte[] source) throws ParseException, IOException {
+        Path entry = m_folder.resolve(key(source) + EXTENSION);
+
+        ASTProgram root = load(entry);
+        if (root != null) {
+            m_hits.incrementAndGet();
+            return root;
+        }
+
+        m_misses.incrementAndGet();
+        root = Parser.ParseTree(new ByteArrayInputStream(source));
+        store(entry, root);
+        return root;
+    }
+
+    public long hits() {
+        return m_hits.get();
+    }
+
+    public long misses() {
+        return m_misses.get();
+    }
+
+    // Total size of the entries, in bytes
+    public long size() {
+        return m_size.get();
+    }
+
+    private static String key(byte[] source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+        digest.update(GRAMMAR);
+        digest.update(source);
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    private ASTProgram load(Path entry) {
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try {
+            byte[] content = Files.readAllBytes(entry);
+            ByteBuffer in = ByteBuffer.wrap(content);
+            CRC32 checksum = new CRC32();
+            checksum.update(content, 0, Math.max(0, content.length - 8));
+            if (content.length < 16 || in.getLong(content.length - 8) != checksum.getValue()) {
+                throw new IOException("Damaged entry");
+            }
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Outdated entry");
+            }
+            in.limit(content.length - 8);
+            CompactTree tree = CompactTree.read(in);
+            if (in.hasRemaining()) {
+                throw new IOException("Damaged entry");
+            }
+            Object root = tree.toTree();
+            if (!(root instanceof ASTProgram)) {
+                throw new IOException("The root is not a program");
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return (ASTProgram) root;
+        } catch (IOException | RuntimeException e) {
+            // Damaged (or deleted by another process), parse the source again
+            remove(entry);
+            return null;
+        }
+    }
+
+    private void store(Path entry, ASTProgram root) throws IOException {
+        Path temporary = Files.createTempFile(m_folder, entry.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                CompactTree.of(root).write(out);
+                file.writeLong(checked.getChecksum().getValue());
+            }
+            long size = Files.size(temporary);
+            if (size > m_maxBytes) {
+                // Would evict everything else and still not fit
+                return;
+            }
+            if (replace(temporary, entry, size) > m_maxBytes) {
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Move the new entry in place and return the new total. The entry of the same source stored by
+    // another thread in the meantime is replaced: its size and the move must not be interleaved
+    // with the ones of the other thread, or the entry would be counted twice
+    private synchronized long replace(Path temporary, Path entry, long size) throws IOException {
+        long replaced = sizeOf(entry);
+        Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return m_size.addAndGet(size - replaced);
+    }
+
+    // Delete the entries used the longest time ago until the size is under the limit
+    private synchronized void evict() throws IOException {
+        List<Entry> entries = entries();
+        long size = 0;
+        for (Entry entry : entries) {
+            size += entry.size;
+        }
+        entries.sort((a, b) -> a.lastUsed.compareTo(b.lastUsed));
+        for (int i = 0; i < entries.size() && size > m_maxBytes; i++) {
+            if (delete(entries.get(i).path)) {
+                size -= entries.get(i).size;
+            }
+        }
+        m_size.set(size);
+    }
+
+    private List<Entry> entries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(m_folder, "*" + EXTENSION)) {
+            for (Path file : files) {
+                try {
+                    entries.add(new Entry(file, Files.size(file), Files.getLastModifiedTime(file)));
+                } catch (IOException e) {
+                    // Deleted by another process in the meantime
+                }
+            }
+        }
+        return entries;
+    }
+
+    // Delete a damaged entry. It may not have the size it had when it was counted (cut, or written
+    // by another version), so the total is counted again from the entries left
+    private synchronized void remove(Path entry) {
+        if (delete(entry)) {
+            try {
+                long size = 0;
+                for (Entry left : entries()) {
+                    size += left.size;
+                }
+                m_size.set(size);
+            } catch (IOException e) {
+                // The folder cannot be read, the next evict() counts it again
+            }
+        }
+    }
+
+    // The size of the file, 0 if it does not exist
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static class Entry {
+        final Path path;
+        final long size;
+        final FileTime lastUsed;
+
+        Entry(Path path, long size, FileTime lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
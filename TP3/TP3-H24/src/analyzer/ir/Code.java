@@ -0,0 +1,285 @@
+package analyzer.ir;
+
+import analyzer.ast.Symbols;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Description: The three-address code of a program, built by the code generators and printed once
+ * at the end instead of being written line by line.
+ *
+ * An instruction is four ints: the opcode (with the operator of IF, IF_FALSE and BINARY), then the
+ * operands x, a and b. An operand is an int too, its kind in the two high bits:
+ *  - a temporary _tN or a label _LN, numbered in the order newTemp() and newLabel() create them,
+ *  - a name (an identifier) interned in a Symbols,
+ *  - an integer constant, kept once in a pool: the same value is always the same operand.
+ * So an optimization pass, or the TP4 backend, can read and compare the instructions without
+ * parsing any text. print() writes the same text the generators wrote before:
+ *
+ *   LABEL      x            (followed by the suffix a, if any)
+ *   GOTO       goto x
+ *   IF         if a op b goto x
+ *   IF_FALSE   ifFalse a op b goto x
+ *   COPY       x = a
+ *   NEG        x = - a
+ *   BINARY     x = a op b
+ *
+ * A Code is filled by one generator and must not be shared between threads.
+ */
+public final class Code {
+
+    public static final int LABEL = 0;
+    public static final int GOTO = 1;
+    public static final int IF = 2;
+    public static final int IF_FALSE = 3;
+    public static final int COPY = 4;
+    public static final int NEG = 5;
+    public static final int BINARY = 6;
+
+    public static final String[] OPERATORS = {"+", "-", "*", "/", "%", "<", "<=", ">", ">=", "==", "!="};
+
+    private static final int TEMP_KIND = 0;
+    private static final int LABEL_KIND = 1;
+    private static final int NAME_KIND = 2;
+    private static final int CONSTANT_KIND = 3;
+
+    private static final int KIND_SHIFT = 30;
+    private static final int INDEX_MASK = (1 << KIND_SHIFT) - 1;
+
+    // The names every Code starts with: the "fall" of the fall-through generator, which is a
+    // label but never defined, and the absent value of an ill-typed expression, printed null
+    public static final int FALL = NAME_KIND << KIND_SHIFT;
+    public static final int NONE = NAME_KIND << KIND_SHIFT | 1;
+
+    // No suffix after a label
+    private static final int NO_SUFFIX = -1;
+
+    private int[] m_code = new int[256];
+    private int m_size = 0;
+
+    private final Symbols m_names = new Symbols();
+    private int[] m_constants = new int[64];
+    private int m_constantCount = 0;
+    private final HashMap<Integer, Integer> m_constantIds = new HashMap<>();
+
+    private int m_temps = 0;
+    private int m_labels = 0;
+
+    public Code() {
+        m_names.intern("fall");
+        m_names.intern("null");
+    }
+
+    // Operands
+
+    public int newTemp() {
+        return TEMP_KIND << KIND_SHIFT | m_temps++;
+    }
+
+    public int newLabel() {
+        return LABEL_KIND << KIND_SHIFT | m_labels++;
+    }
+
+    public int name(String name) {
+        return NAME_KIND << KIND_SHIFT | m_names.intern(name);
+    }
+
+    public int constant(int value) {
+        Integer id = m_constantIds.get(value);
+        if (id == null) {
+            if (m_constantCount == m_constants.length) {
+                m_constants = Arrays.copyOf(m_constants, m_constantCount * 2);
+            }
+            id = m_constantCount++;
+            m_constants[id] = value;
+            m_constantIds.put(value, id);
+        }
+        return CONSTANT_KIND << KIND_SHIFT | id;
+    }
+
+    public static boolean isTemp(int operand) {
+        return operand >>> KIND_SHIFT == TEMP_KIND;
+    }
+
+    public static boolean isLabel(int operand) {
+        return operand >>> KIND_SHIFT == LABEL_KIND;
+    }
+
+    public static boolean isName(int operand) {
+        return operand >>> KIND_SHIFT == NAME_KIND;
+    }
+
+    public static boolean isConstant(int operand) {
+        return operand >>> KIND_SHIFT == CONSTANT_KIND;
+    }
+
+    // The number of the temporary or the label, the id of the name
+    public static int index(int operand) {
+        return operand & INDEX_MASK;
+    }
+
+    public int constantValue(int operand) {
+        return m_constants[index(operand)];
+    }
+
+    public String text(int operand) {
+        return append(new StringBuilder(), operand).toString();
+    }
+
+    // Instructions
+
+    public void label(int label) {
+        add(LABEL, label, NO_SUFFIX, 0);
+    }
+
+    public void label(int label, String suffix) {
+        add(LABEL, label, name(suffix), 0);
+    }
+
+    public void jump(int label) {
+        add(GOTO, label, 0, 0);
+    }
+
+    public void branch(int a, String operator, int b, int label) {
+        add(IF | operator(operator) << 8, label, a, b);
+    }
+
+    public void branchFalse(int a, String operator, int b, int label) {
+        add(IF_FALSE | operator(operator) << 8, label, a, b);
+    }
+
+    public void copy(int x, int a) {
+        add(COPY, x, a, 0);
+    }
+
+    public void negate(int x, int a) {
+        add(NEG, x, a, 0);
+    }
+
+    public void binary(int x, int a, String operator, int b) {
+        add(BINARY | operator(operator) << 8, x, a, b);
+    }
+
+    private void add(int opcode, int x, int a, int b) {
+        if (m_size * 4 == m_code.length) {
+            m_code = Arrays.copyOf(m_code, m_code.length * 2);
+        }
+        int i = m_size++ * 4;
+        m_code[i] = opcode;
+        m_code[i + 1] = x;
+        m_code[i + 2] = a;
+        m_code[i + 3] = b;
+    }
+
+    private static int operator(String operator) {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            if (OPERATORS[i].equals(operator)) return i;
+        }
+        throw new IllegalArgumentException("Unknown operator " + operator);
+    }
+
+    // The instructions, numbered from 0
+
+    public int size() {
+        return m_size;
+    }
+
+    public int opcode(int instruction) {
+        return m_code[instruction * 4] & 0xFF;
+    }
+
+    // The index of the operator in OPERATORS
+    public int operator(int instruction) {
+        return m_code[instruction * 4] >>> 8;
+    }
+
+    public int x(int instruction) {
+        return m_code[instruction * 4 + 1];
+    }
+
+    public int a(int instruction) {
+        return m_code[instruction * 4 + 2];
+    }
+
+    public int b(int instruction) {
+        return m_code[instruction * 4 + 3];
+    }
+
+    // The number of labels created by newLabel()
+    public int labels() {
+        return m_labels;
+    }
+
+    // Changes to the instructions, for Peephole
+
+    void setX(int instruction, int x) {
+        m_code[instruction * 4 + 1] = x;
+    }
+
+    void setOpcode(int instruction, int opcode, int operator) {
+        m_code[instruction * 4] = opcode | operator << 8;
+    }
+
+    // Removes the instructions marked in removed, the others keep their order
+    void remove(boolean[] removed) {
+        int size = 0;
+        for (int i = 0; i < m_size; i++) {
+            if (!removed[i]) {
+                System.arraycopy(m_code, i * 4, m_code, size * 4, 4);
+                size++;
+            }
+        }
+        m_size = size;
+    }
+
+    public void print(PrintWriter writer) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < m_size; i++) {
+            line.setLength(0);
+            int a = a(i);
+            switch (opcode(i)) {
+                case LABEL:
+                    append(line, x(i));
+                    if (a != NO_SUFFIX) {
+                        line.append(m_names.name(index(a)));
+                    }
+                    break;
+                case GOTO:
+                    append(line.append("goto "), x(i));
+                    break;
+                case IF:
+                case IF_FALSE:
+                    line.append(opcode(i) == IF ? "if " : "ifFalse ");
+                    append(line, a).append(' ').append(OPERATORS[operator(i)]).append(' ');
+                    append(append(line, b(i)).append(" goto "), x(i));
+                    break;
+                case COPY:
+                    append(append(line, x(i)).append(" = "), a);
+                    break;
+                case NEG:
+                    append(append(line, x(i)).append(" = - "), a);
+                    break;
+                default:
+                    append(append(line, x(i)).append(" = "), a).append(' ').append(OPERATORS[operator(i)]).append(' ');
+                    append(line, b(i));
+                    break;
+            }
+            writer.println(line);
+        }
+    }
+
+    private StringBuilder append(StringBuilder text, int operand) {
+        switch (operand >>> KIND_SHIFT) {
+            case TEMP_KIND:
+                return text.append("_t").append(index(operand));
+            case LABEL_KIND:
+                return text.append("_L").append(index(operand));
+            case NAME_KIND:
+                return text.append(m_names.name(index(operand)));
+            default:
+                return text.append(constantValue(operand));
+        }
+    }
+}
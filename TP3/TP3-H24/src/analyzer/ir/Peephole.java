@@ -0,0 +1,211 @@
+package analyzer.ir;
+
+import java.util.Arrays;
+
+/**
+ * Description: A peephole pass over a Code, removing the jumps and labels the generators leave
+ * behind: a label after every statement of a block, a goto to the label that follows it, a goto
+ * to a goto. The rules are applied until none of them changes the code:
+ *
+ *  - consecutive labels are merged, the jumps go to the first one,
+ *  - a jump to a label followed by "goto L" goes to L (jump threading),
+ *  - "if a op b goto T" followed by "goto F" and T becomes "if a !op b goto F" followed by T,
+ *  - a jump to the label that follows it is removed, the conditions have no side effects,
+ *  - the instructions after a goto, up to the next label, are never run and are removed,
+ *  - a label that nothing refers to is removed.
+ *
+ * A label used as a value (the fall-through generator gives some to ill-typed expressions) is
+ * never removed. The code keeps its temporaries and labels, only their number of uses changes:
+ *
+ *   Peephole peephole = new Peephole();
+ *   root.jjtAccept(new IntermediateCodeGenVisitor(writer, prelude, constants, peephole), null);
+ *   System.err.println(peephole);
+ */
+public final class Peephole {
+
+    private int m_before = 0;
+    private int m_after = 0;
+
+    // The number of instructions of the code before and after the last run
+    public int before() {
+        return m_before;
+    }
+
+    public int after() {
+        return m_after;
+    }
+
+    @Override
+    public String toString() {
+        return "peephole: " + m_before + " -> " + m_after + " instructions";
+    }
+
+    public void run(Code code) {
+        m_before = code.size();
+        boolean changed = true;
+        while (changed) {
+            changed = mergeLabels(code);
+            changed |= threadJumps(code);
+            changed |= invertBranches(code);
+            changed |= removeJumps(code);
+            changed |= removeUnreachable(code);
+            changed |= removeLabels(code);
+        }
+        m_after = code.size();
+    }
+
+    private static boolean isJump(int opcode) {
+        return opcode == Code.GOTO || opcode == Code.IF || opcode == Code.IF_FALSE;
+    }
+
+    // The position of every label in the code, -1 if it is not defined
+    private static int[] positions(Code code) {
+        int[] positions = new int[code.labels()];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < code.size(); i++) {
+            if (code.opcode(i) == Code.LABEL) {
+                positions[Code.index(code.x(i))] = i;
+            }
+        }
+        return positions;
+    }
+
+    // True if the label is defined in the run of labels starting at the instruction
+    private static boolean labelsFrom(Code code, int instruction, int label) {
+        for (int i = instruction; i < code.size() && code.opcode(i) == Code.LABEL; i++) {
+            if (code.x(i) == label) return true;
+        }
+        return false;
+    }
+
+    private static boolean mergeLabels(Code code) {
+        // The first label of the run of each label which is not the first of its run, 0 otherwise
+        int[] first = new int[code.labels()];
+        for (int i = 1; i < code.size(); i++) {
+            if (code.opcode(i) == Code.LABEL && code.opcode(i - 1) == Code.LABEL) {
+                int previous = code.x(i - 1);
+                first[Code.index(code.x(i))] = first[Code.index(previous)] != 0 ? first[Code.index(previous)] : previous;
+            }
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            int target = code.x(i);
+            if (isJump(code.opcode(i)) && Code.isLabel(target) && first[Code.index(target)] != 0) {
+                code.setX(i, first[Code.index(target)]);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean threadJumps(Code code) {
+        int[] positions = positions(code);
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            if (!isJump(code.opcode(i)) || !Code.isLabel(code.x(i))) continue;
+
+            // A cycle of gotos is a loop which never ends, it is left as it is
+            int target = code.x(i);
+            for (int steps = 0; steps < code.size(); steps++) {
+                int position = positions[Code.index(target)];
+                if (position < 0) break;
+                while (position < code.size() && code.opcode(position) == Code.LABEL) {
+                    position++;
+                }
+                if (position == code.size() || code.opcode(position) != Code.GOTO || !Code.isLabel(code.x(position))) {
+                    if (target != code.x(i)) {
+                        code.setX(i, target);
+                        changed = true;
+                    }
+                    break;
+                }
+                target = code.x(position);
+            }
+        }
+        return changed;
+    }
+
+    // The comparison which is true when the operator is false: < and >=, <= and >, == and !=
+    private static int inverse(int operator) {
+        String inverse;
+        switch (Code.OPERATORS[operator]) {
+            case "<": inverse = ">="; break;
+            case "<=": inverse = ">"; break;
+            case ">": inverse = "<="; break;
+            case ">=": inverse = "<"; break;
+            case "==": inverse = "!="; break;
+            default: inverse = "=="; break;
+        }
+        return Arrays.asList(Code.OPERATORS).indexOf(inverse);
+    }
+
+    private static boolean invertBranches(Code code) {
+        boolean[] removed = new boolean[code.size()];
+        boolean changed = false;
+        for (int i = 0; i + 1 < code.size(); i++) {
+            int opcode = code.opcode(i);
+            if ((opcode == Code.IF || opcode == Code.IF_FALSE) && code.opcode(i + 1) == Code.GOTO
+                    && labelsFrom(code, i + 2, code.x(i))) {
+                // "ifFalse a op b" is "if a op b" inverted
+                code.setOpcode(i, Code.IF, opcode == Code.IF ? inverse(code.operator(i)) : code.operator(i));
+                code.setX(i, code.x(i + 1));
+                removed[i + 1] = true;
+                changed = true;
+                i++;
+            }
+        }
+        code.remove(removed);
+        return changed;
+    }
+
+    private static boolean removeJumps(Code code) {
+        boolean[] removed = new boolean[code.size()];
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            if (isJump(code.opcode(i)) && labelsFrom(code, i + 1, code.x(i))) {
+                removed[i] = true;
+                changed = true;
+            }
+        }
+        code.remove(removed);
+        return changed;
+    }
+
+    private static boolean removeUnreachable(Code code) {
+        boolean[] removed = new boolean[code.size()];
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            if (code.opcode(i) != Code.GOTO) continue;
+            while (i + 1 < code.size() && code.opcode(i + 1) != Code.LABEL) {
+                removed[++i] = true;
+                changed = true;
+            }
+        }
+        code.remove(removed);
+        return changed;
+    }
+
+    private static boolean removeLabels(Code code) {
+        boolean[] used = new boolean[code.labels()];
+        for (int i = 0; i < code.size(); i++) {
+            int opcode = code.opcode(i);
+            if (opcode != Code.LABEL && Code.isLabel(code.x(i))) used[Code.index(code.x(i))] = true;
+            if (opcode != Code.LABEL && opcode != Code.GOTO) {
+                if (Code.isLabel(code.a(i))) used[Code.index(code.a(i))] = true;
+                if (Code.isLabel(code.b(i))) used[Code.index(code.b(i))] = true;
+            }
+        }
+
+        boolean[] removed = new boolean[code.size()];
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            if (code.opcode(i) == Code.LABEL && !used[Code.index(code.x(i))]) {
+                removed[i] = true;
+                changed = true;
+            }
+        }
+        code.remove(removed);
+        return changed;
+    }
+}
@@ -0,0 +1,253 @@
+package analyzer.prelude;
+
+import analyzer.SemantiqueError;
+import analyzer.ast.ASTProgram;
+import analyzer.ast.Node;
+import analyzer.ast.ParseException;
+import analyzer.ast.Parser;
+import analyzer.ast.ParserTreeConstants;
+import analyzer.ast.SimpleNode;
+import analyzer.visitors.IntermediateCodeGenFallVisitor;
+import analyzer.visitors.IntermediateCodeGenVisitor;
+import analyzer.visitors.SemantiqueVisitor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Description: The symbols of a prelude, a source holding only declarations and enums, compiled
+ * once and shared by the files which import it.
+ *
+ * A file compiled with a prelude gives the same result as the prelude followed by the file: the
+ * visitors look up an identifier in their own tables first, then in the prelude. The prelude is
+ * never visited again, so the time spent on a file depends only on the file itself.
+ *
+ * A Prelude is immutable, the same one can be given to many visitors, in many threads. It is
+ * saved in a file with a CRC32 at the end (like the entries of AstCache), so it can be compiled
+ * by one process and loaded by the others:
+ *
+ *   java analyzer.prelude.Prelude common.txt common.prelude
+ *
+ *   Prelude prelude = Prelude.load(Paths.get("common.prelude"));
+ *   root.jjtAccept(new IntermediateCodeGenVisitor(writer, prelude), null);
+ *
+ * The SemantiqueVisitor does not know the enums yet (a variable of an enum type makes it fail):
+ * a prelude with such declarations can still be used by the code generators, but not by the
+ * SemantiqueVisitor.
+ */
+public final class Prelude {
+
+    // Start of the file, followed by the version of the format
+    private static final int MAGIC = 0x50524C44;
+    private static final int VERSION = 1;
+
+    public static final Prelude EMPTY = new Prelude(Collections.emptyMap(), null, Collections.emptyMap(), Collections.emptyMap());
+
+    // The types by name of the constants of VarType, so they are the same for both code
+    // generators and can be saved
+    private final Map<String, String> m_semantiqueTypeNames;
+    private final Map<String, String> m_codeGenTypeNames;
+    private final Map<String, Integer> m_enumValues;
+
+    // Why the SemantiqueVisitor could not check the prelude, null if it did
+    private final String m_semantiqueFailure;
+
+    private final Map<String, SemantiqueVisitor.VarType> m_semantiqueTypes;
+    private final Map<String, IntermediateCodeGenVisitor.VarType> m_codeGenTypes;
+    private final Map<String, IntermediateCodeGenFallVisitor.VarType> m_fallTypes;
+
+    private Prelude(Map<String, String> semantiqueTypeNames, String semantiqueFailure,
+                    Map<String, String> codeGenTypeNames, Map<String, Integer> enumValues) {
+        m_semantiqueTypeNames = Collections.unmodifiableMap(new HashMap<>(semantiqueTypeNames));
+        m_semantiqueFailure = semantiqueFailure;
+        m_codeGenTypeNames = Collections.unmodifiableMap(new HashMap<>(codeGenTypeNames));
+        m_enumValues = Collections.unmodifiableMap(new HashMap<>(enumValues));
+
+        Map<String, SemantiqueVisitor.VarType> semantiqueTypes = new HashMap<>();
+        for (Map.Entry<String, String> entry : m_semantiqueTypeNames.entrySet()) {
+            semantiqueTypes.put(entry.getKey(), SemantiqueVisitor.VarType.valueOf(entry.getValue()));
+        }
+        Map<String, IntermediateCodeGenVisitor.VarType> codeGenTypes = new HashMap<>();
+        Map<String, IntermediateCodeGenFallVisitor.VarType> fallTypes = new HashMap<>();
+        for (Map.Entry<String, String> entry : m_codeGenTypeNames.entrySet()) {
+            codeGenTypes.put(entry.getKey(), IntermediateCodeGenVisitor.VarType.valueOf(entry.getValue()));
+            fallTypes.put(entry.getKey(), IntermediateCodeGenFallVisitor.VarType.valueOf(entry.getValue()));
+        }
+        m_semantiqueTypes = Collections.unmodifiableMap(semantiqueTypes);
+        m_codeGenTypes = Collections.unmodifiableMap(codeGenTypes);
+        m_fallTypes = Collections.unmodifiableMap(fallTypes);
+    }
+
+    // The arguments are:
+    // arg[0] (Required): The path of the prelude source
+    // arg[1] (Required): The path of the compiled prelude
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length < 2) {
+            System.err.println("Usage: Prelude <source> <compiled prelude>");
+            return;
+        }
+        try (InputStream source = Files.newInputStream(Paths.get(args[0]))) {
+            compile(source).save(Paths.get(args[1]));
+        }
+    }
+
+    // Parse the source and visit it once to fill the tables. The source must hold only
+    // declarations and enums, a statement is an IllegalArgumentException.
+    public static Prelude compile(InputStream source) throws ParseException {
+        ASTProgram root = Parser.ParseTree(source);
+        for (int i = 0; i < root.jjtGetNumChildren(); i++) {
+            Node child = root.jjtGetChild(i);
+            if (((SimpleNode) child).getId() == ParserTreeConstants.JJTBLOCK && child.jjtGetNumChildren() > 0) {
+                throw new IllegalArgumentException("A prelude holds only declarations and enums");
+            }
+        }
+
+        // What the visitors print for an empty program is not kept
+        PrintWriter discard = new PrintWriter(new StringWriter());
+
+        Map<String, String> semantiqueTypes = new HashMap<>();
+        String semantiqueFailure = null;
+        SemantiqueVisitor semantique = new SemantiqueVisitor(discard);
+        try {
+            root.jjtAccept(semantique, null);
+            semantiqueTypes = names(semantique.SymbolTable);
+        } catch (SemantiqueError | RuntimeException e) {
+            semantiqueFailure = String.valueOf(e);
+        }
+
+        IntermediateCodeGenVisitor codeGen = new IntermediateCodeGenVisitor(discard);
+        root.jjtAccept(codeGen, null);
+
+        return new Prelude(semantiqueTypes, semantiqueFailure, names(codeGen.SymbolTable), codeGen.EnumValueTable);
+    }
+
+    private static Map<String, String> names(Map<String, ? extends Enum<?>> types) {
+        Map<String, String> names = new HashMap<>();
+        for (Map.Entry<String, ? extends Enum<?>> entry : types.entrySet()) {
+            names.put(entry.getKey(), entry.getValue().name());
+        }
+        return names;
+    }
+
+    // The types of the identifiers for the SemantiqueVisitor
+    public Map<String, SemantiqueVisitor.VarType> semantiqueTypes() {
+        if (m_semantiqueFailure != null) {
+            throw new IllegalStateException("The prelude could not be checked: " + m_semantiqueFailure);
+        }
+        return m_semantiqueTypes;
+    }
+
+    // The types of the identifiers for the IntermediateCodeGenVisitor
+    public Map<String, IntermediateCodeGenVisitor.VarType> codeGenTypes() {
+        return m_codeGenTypes;
+    }
+
+    // The types of the identifiers for the IntermediateCodeGenFallVisitor
+    public Map<String, IntermediateCodeGenFallVisitor.VarType> fallTypes() {
+        return m_fallTypes;
+    }
+
+    // The index of every enum value in its enum, for both code generators
+    public Map<String, Integer> enumValues() {
+        return m_enumValues;
+    }
+
+    public void save(Path file) throws IOException {
+        Path folder = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(folder, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                CheckedOutputStream checked = new CheckedOutputStream(output, new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeBoolean(m_semantiqueFailure == null);
+                if (m_semantiqueFailure == null) {
+                    writeNames(out, m_semantiqueTypeNames);
+                } else {
+                    out.writeUTF(m_semantiqueFailure);
+                }
+                writeNames(out, m_codeGenTypeNames);
+                out.writeInt(m_enumValues.size());
+                for (Map.Entry<String, Integer> entry : m_enumValues.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+                out.flush();
+                output.writeLong(checked.getChecksum().getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Load a prelude saved by save(), an IOException if the file is damaged or outdated
+    public static Prelude load(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        CRC32 checksum = new CRC32();
+        checksum.update(content, 0, Math.max(0, content.length - 8));
+        if (content.length < 16 || ByteBuffer.wrap(content).getLong(content.length - 8) != checksum.getValue()) {
+            throw new IOException("Damaged prelude: " + file);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 8));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Outdated prelude: " + file);
+        }
+        Map<String, String> semantiqueTypes = Collections.emptyMap();
+        String semantiqueFailure = null;
+        if (in.readBoolean()) {
+            semantiqueTypes = readNames(in);
+        } else {
+            semantiqueFailure = in.readUTF();
+        }
+        Map<String, String> codeGenTypes = readNames(in);
+        Map<String, Integer> enumValues = new HashMap<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            String name = in.readUTF();
+            enumValues.put(name, in.readInt());
+        }
+        if (in.available() > 0) {
+            throw new IOException("Damaged prelude: " + file);
+        }
+        try {
+            return new Prelude(semantiqueTypes, semantiqueFailure, codeGenTypes, enumValues);
+        } catch (IllegalArgumentException e) {
+            // A type which is not a constant of VarType anymore
+            throw new IOException("Outdated prelude: " + file, e);
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, Map<String, String> names) throws IOException {
+        out.writeInt(names.size());
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readNames(DataInputStream in) throws IOException {
+        Map<String, String> names = new HashMap<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            String name = in.readUTF();
+            names.put(name, in.readUTF());
+        }
+        return names;
+    }
+}
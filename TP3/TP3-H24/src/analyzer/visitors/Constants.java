@@ -0,0 +1,320 @@
+package analyzer.visitors;
+
+import analyzer.ast.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Description: Les valeurs connues à la compilation des expressions d'un programme, calculées une
+ * fois par une passe sur l'AST (pliage et propagation des constantes) et lues par les visiteurs.
+ * <p>
+ * Une expression dont les opérandes sont des littéraux, ou des variables qui ont reçu une valeur
+ * connue plus haut dans le même chemin du programme, a la valeur de son calcul : un Integer pour
+ * une expression numérique, un Boolean pour une condition. Un noeud sans valeur connue n'est pas
+ * dans la table. Une variable qui reçoit une valeur inconnue, ou qui est assignée dans une boucle
+ * ou un switch, n'a plus de valeur connue ; après un if, elle garde la valeur que lui donnent les
+ * deux branches.
+ * <p>
+ * Le pliage suit le code généré : a - b - c vaut a - (b - c) et a && b || c vaut a && (b || c)
+ * (voir IntermediateCodeGenVisitor). Un calcul que le code pourrait faire autrement n'est pas
+ * plié : un dépassement de capacité, une division par zéro ou d'un nombre négatif, et les
+ * comparaisons de booléens, dont le code ne passe pas par leurs valeurs.
+ * <p>
+ * Les branches qui ne sont jamais prises (if, while ou for dont la condition est connue) ne sont
+ * pas parcourues. La passe est faite pour un programme qui a passé le SemantiqueVisitor :
+ *   Constants constants = Constants.of(root);
+ *   root.jjtAccept(new IntermediateCodeGenVisitor(writer, Prelude.EMPTY, constants), null);
+ */
+public final class Constants {
+
+    // Aucune valeur connue : le code est généré sans pliage
+    public static final Constants NONE = new Constants();
+
+    private final IdentityHashMap<Node, Object> m_values = new IdentityHashMap<>();
+
+    private Constants() {
+    }
+
+    public static Constants of(ASTProgram root) {
+        Constants constants = new Constants();
+        Folder folder = constants.new Folder();
+        for (int i = 0; i < root.jjtGetNumChildren(); i++) {
+            Node child = root.jjtGetChild(i);
+            if (((SimpleNode) child).getId() == ParserTreeConstants.JJTBLOCK) {
+                folder.statement(child, new HashMap<>());
+            }
+        }
+        return constants;
+    }
+
+    // La valeur de l'expression (Integer ou Boolean), null si elle n'est pas connue
+    public Object valueOf(Node node) {
+        return m_values.isEmpty() ? null : m_values.get(node);
+    }
+
+    // Le nombre de noeuds dont la valeur est connue
+    public int size() {
+        return m_values.size();
+    }
+
+    /**
+     * Parcourt les instructions avec les valeurs connues des variables (par nom), et les
+     * expressions avec un parcours itératif (voir TreeWalker) : à sa sortie, chaque noeud remplace
+     * les valeurs de ses enfants sur la pile par la sienne.
+     */
+    private class Folder implements TreeWalker.Listener {
+        private final TreeWalker m_walker = new TreeWalker();
+
+        private Object[] m_stack = new Object[16];
+        private int m_size = 0;
+
+        // Les variables de l'expression parcourue, et si ses valeurs sont gardées dans la table
+        private Map<String, Object> m_variables;
+        private boolean m_record;
+        // Le nombre de comparaisons dont le parcours est dans les opérandes
+        private int m_comparisons = 0;
+
+        void statement(Node node, Map<String, Object> variables) {
+            switch (((SimpleNode) node).getId()) {
+                case ParserTreeConstants.JJTBLOCK:
+                case ParserTreeConstants.JJTSTMT:
+                    for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                        statement(node.jjtGetChild(i), variables);
+                    }
+                    break;
+                case ParserTreeConstants.JJTASSIGNSTMT: {
+                    String name = ((ASTIdentifier) node.jjtGetChild(0)).getValue();
+                    Object value = fold(node.jjtGetChild(1), variables, true);
+                    if (value != null) {
+                        variables.put(name, value);
+                    } else {
+                        variables.remove(name);
+                    }
+                    break;
+                }
+                case ParserTreeConstants.JJTIFSTMT: {
+                    Object condition = fold(node.jjtGetChild(0), variables, true);
+                    if (Boolean.TRUE.equals(condition)) {
+                        statement(node.jjtGetChild(1), variables);
+                    } else if (Boolean.FALSE.equals(condition)) {
+                        if (node.jjtGetNumChildren() == 3) {
+                            statement(node.jjtGetChild(2), variables);
+                        }
+                    } else {
+                        Map<String, Object> taken = new HashMap<>(variables);
+                        statement(node.jjtGetChild(1), taken);
+                        if (node.jjtGetNumChildren() == 3) {
+                            statement(node.jjtGetChild(2), variables);
+                        }
+                        retain(variables, taken);
+                    }
+                    break;
+                }
+                case ParserTreeConstants.JJTWHILESTMT:
+                    loop(node, node.jjtGetChild(0), variables, node.jjtGetChild(1));
+                    break;
+                case ParserTreeConstants.JJTFORSTMT:
+                    statement(node.jjtGetChild(0), variables);
+                    loop(node, node.jjtGetChild(1), variables, node.jjtGetChild(3), node.jjtGetChild(2));
+                    break;
+                case ParserTreeConstants.JJTSWITCHSTMT:
+                    // Un case peut continuer dans le suivant : chaque case commence sans les
+                    // variables assignées dans le switch
+                    forget(node, variables);
+                    for (int i = 1; i < node.jjtGetNumChildren(); i++) {
+                        Node caseStmt = node.jjtGetChild(i);
+                        Map<String, Object> inside = new HashMap<>(variables);
+                        for (int j = 1; j < caseStmt.jjtGetNumChildren(); j++) {
+                            statement(caseStmt.jjtGetChild(j), inside);
+                        }
+                    }
+                    break;
+                default:
+                    // BreakStmt, et les instructions vides
+                    break;
+            }
+        }
+
+        // Une boucle dont la condition est fausse en entrant n'est jamais prise. Sinon, la condition
+        // et le corps ne connaissent que les variables qui ne sont pas assignées dans la boucle,
+        // les seules dont la valeur est la même à chaque tour.
+        private void loop(Node node, Node condition, Map<String, Object> variables, Node... body) {
+            if (Boolean.FALSE.equals(fold(condition, variables, false))) {
+                fold(condition, variables, true);
+                return;
+            }
+            forget(node, variables);
+            fold(condition, variables, true);
+            Map<String, Object> inside = new HashMap<>(variables);
+            for (Node statement : body) {
+                statement(statement, inside);
+            }
+        }
+
+        // Oublie les variables assignées sous le noeud
+        private void forget(Node node, Map<String, Object> variables) {
+            if (variables.isEmpty() || node instanceof ASTExpr) return;
+            if (((SimpleNode) node).getId() == ParserTreeConstants.JJTASSIGNSTMT) {
+                variables.remove(((ASTIdentifier) node.jjtGetChild(0)).getValue());
+                return;
+            }
+            for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                forget(node.jjtGetChild(i), variables);
+            }
+        }
+
+        // Garde les variables qui ont la même valeur connue dans les deux branches
+        private void retain(Map<String, Object> variables, Map<String, Object> other) {
+            Iterator<Map.Entry<String, Object>> entries = variables.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Object> entry = entries.next();
+                if (!entry.getValue().equals(other.get(entry.getKey()))) {
+                    entries.remove();
+                }
+            }
+        }
+
+        private Object fold(Node expression, Map<String, Object> variables, boolean record) {
+            m_variables = variables;
+            m_record = record;
+            m_size = 0;
+            m_comparisons = 0;
+            m_walker.walk(expression, this);
+            return m_stack[0];
+        }
+
+        @Override
+        public boolean enter(Node node) {
+            if (node instanceof ASTCompExpr && ((ASTCompExpr) node).getValue() != null) {
+                m_comparisons++;
+            }
+            return true;
+        }
+
+        @Override
+        public void exit(Node node) {
+            int first = m_size - node.jjtGetNumChildren();
+            Object value;
+            switch (((SimpleNode) node).getId()) {
+                case ParserTreeConstants.JJTIDENTIFIER:
+                    value = m_variables.get(((ASTIdentifier) node).getValue());
+                    push(value);
+                    break;
+                case ParserTreeConstants.JJTINTVALUE:
+                    value = ((ASTIntValue) node).getValue();
+                    push(value);
+                    break;
+                case ParserTreeConstants.JJTBOOLVALUE:
+                    value = ((ASTBoolValue) node).getValue();
+                    push(value);
+                    break;
+                case ParserTreeConstants.JJTNOTEXPR:
+                    value = m_stack[first];
+                    if (((ASTNotExpr) node).getOps().size() % 2 == 1) {
+                        value = value instanceof Boolean ? !(Boolean) value : null;
+                    }
+                    break;
+                case ParserTreeConstants.JJTUNAEXPR:
+                    value = m_stack[first];
+                    if (((ASTUnaExpr) node).getOps().size() > 0 && !(value instanceof Integer)) {
+                        value = null;
+                    } else if (((ASTUnaExpr) node).getOps().size() % 2 == 1) {
+                        value = (Integer) value == Integer.MIN_VALUE ? null : -(Integer) value;
+                    }
+                    break;
+                case ParserTreeConstants.JJTCOMPEXPR: {
+                    String op = ((ASTCompExpr) node).getValue();
+                    value = m_stack[first];
+                    if (op != null) {
+                        m_comparisons--;
+                        value = compare(op, value, m_stack[first + 1]);
+                    }
+                    m_size = first + 1;
+                    break;
+                }
+                case ParserTreeConstants.JJTADDEXPR:
+                case ParserTreeConstants.JJTMULEXPR: {
+                    value = m_stack[m_size - 1];
+                    Vector<?> ops = node instanceof ASTAddExpr ? ((ASTAddExpr) node).getOps() : ((ASTMulExpr) node).getOps();
+                    for (int i = m_size - 2; i >= first && value != null; i--) {
+                        value = compute((String) ops.get(i - first), m_stack[i], value);
+                    }
+                    m_size = first + 1;
+                    break;
+                }
+                case ParserTreeConstants.JJTBOOLEXPR: {
+                    // Les opérandes n'ont pas d'effet : un opérande qui décide du résultat suffit
+                    value = m_stack[m_size - 1];
+                    Vector<?> ops = ((ASTBoolExpr) node).getOps();
+                    for (int i = m_size - 2; i >= first; i--) {
+                        Object left = m_stack[i];
+                        boolean and = ops.get(i - first).equals("&&");
+                        if (Boolean.valueOf(!and).equals(left) || Boolean.valueOf(!and).equals(value)) {
+                            value = !and;
+                        } else if (!(left instanceof Boolean && value instanceof Boolean)) {
+                            value = null;
+                        }
+                    }
+                    m_size = first + 1;
+                    break;
+                }
+                default:
+                    // Expr et GenValue ont la valeur de leur seul enfant
+                    value = m_stack[first];
+                    break;
+            }
+            m_stack[m_size - 1] = value;
+
+            // Le code d'une comparaison visite ses opérandes sans étiquettes de condition : un
+            // booléen n'y est pas remplacé par un saut
+            if (m_record && value != null && (value instanceof Integer || m_comparisons == 0)) {
+                m_values.put(node, value);
+            }
+        }
+
+        private Object compare(String op, Object left, Object right) {
+            if (!(left instanceof Integer && right instanceof Integer)) return null;
+            int a = (Integer) left;
+            int b = (Integer) right;
+            switch (op) {
+                case "<": return a < b;
+                case "<=": return a <= b;
+                case ">": return a > b;
+                case ">=": return a >= b;
+                case "==": return a == b;
+                case "!=": return a != b;
+                default: return null;
+            }
+        }
+
+        private Object compute(String op, Object left, Object right) {
+            if (!(left instanceof Integer && right instanceof Integer)) return null;
+            int a = (Integer) left;
+            int b = (Integer) right;
+            try {
+                switch (op) {
+                    case "+": return Math.addExact(a, b);
+                    case "-": return Math.subtractExact(a, b);
+                    case "*": return Math.multiplyExact(a, b);
+                    case "/": return a >= 0 && b > 0 ? a / b : null;
+                    case "%": return a >= 0 && b > 0 ? a % b : null;
+                    default: return null;
+                }
+            } catch (ArithmeticException e) {
+                return null;
+            }
+        }
+
+        private void push(Object value) {
+            if (m_size == m_stack.length) {
+                m_stack = Arrays.copyOf(m_stack, m_size * 2);
+            }
+            m_stack[m_size++] = value;
+        }
+    }
+}
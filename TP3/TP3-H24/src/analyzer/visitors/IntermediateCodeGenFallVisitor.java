@@ -1,9 +1,13 @@
 package analyzer.visitors;
 
 import analyzer.ast.*;
+import analyzer.ir.Code;
+import analyzer.ir.Peephole;
+import analyzer.prelude.Prelude;
 
 import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
 
@@ -17,26 +21,69 @@ import java.util.Vector;
  * @version 2024.02.26
  */
 public class IntermediateCodeGenFallVisitor implements ParserVisitor {
-    public static final String FALL = "fall";
+    public static final int FALL = Code.FALL;
 
     private final PrintWriter m_writer;
+    // Le code généré, écrit dans m_writer à la fin du programme
+    private final Code m_code = new Code();
 
     public HashMap<String, VarType> SymbolTable = new HashMap<>();
     public HashMap<String, Integer> EnumValueTable = new HashMap<>();
 
-    private int id = 0;
-    private int label = 0;
+    // Les tables du prélude importé, cherchées quand le fichier ne déclare pas l'identifiant
+    private final Map<String, VarType> m_preludeTypes;
+    private final Map<String, Integer> m_preludeEnumValues;
+    private final Peephole m_peephole;
 
     public IntermediateCodeGenFallVisitor(PrintWriter writer) {
+        this(writer, Prelude.EMPTY);
+    }
+
+    // Le code du programme est celui qu'il aurait à la suite du prélude (voir Prelude)
+    public IntermediateCodeGenFallVisitor(PrintWriter writer, Prelude prelude) {
+        this(writer, prelude, null);
+    }
+
+    // Le code passe par le peephole avant d'être écrit (voir Peephole), null pour l'écrire tel quel
+    public IntermediateCodeGenFallVisitor(PrintWriter writer, Prelude prelude, Peephole peephole) {
         m_writer = writer;
+        m_preludeTypes = prelude.fallTypes();
+        m_preludeEnumValues = prelude.enumValues();
+        m_peephole = peephole;
     }
 
-    private String newID() {
-        return "_t" + id++;
+    private VarType symbolType(String name) {
+        VarType type = SymbolTable.get(name);
+        return type != null ? type : m_preludeTypes.get(name);
     }
 
-    private String newLabel() {
-        return "_L" + label++;
+    private Integer enumValue(String name) {
+        Integer value = EnumValueTable.get(name);
+        return value != null ? value : m_preludeEnumValues.get(name);
+    }
+
+    public Code code() {
+        return m_code;
+    }
+
+    private int newID() {
+        return m_code.newTemp();
+    }
+
+    private int newLabel() {
+        return m_code.newLabel();
+    }
+
+    // L'opérande rendu par la visite d'une expression. Une expression mal typée n'en rend pas,
+    // elle est écrite null comme dans le texte des versions précédentes.
+    private static int operand(Object value) {
+        return value == null ? Code.NONE : (Integer) value;
+    }
+
+    // La valeur de la constante d'enum nommée par l'opérande
+    private int enumOperand(Object value) {
+        Integer enumValue = enumValue(m_code.text(operand(value)));
+        return enumValue == null ? Code.NONE : m_code.constant(enumValue);
     }
 
     @Override
@@ -46,10 +93,14 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTProgram node, Object data) {
-        String label = newLabel();
+        int label = newLabel();
         node.childrenAccept(this, label);
         // TODO
-        m_writer.println(label);
+        m_code.label(label);
+        if (m_peephole != null) {
+            m_peephole.run(m_code);
+        }
+        m_code.print(m_writer);
         return null;
     }
 
@@ -78,9 +129,9 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
         } else {
             int i = 0;
             while (i < numChildren - 1) {
-                String label = newLabel();
+                int label = newLabel();
                 node.jjtGetChild(i).jjtAccept(this, label);
-                m_writer.println(label);
+                m_code.label(label);
                 i++;
             }
             node.jjtGetChild(i).jjtAccept(this, data);
@@ -105,28 +156,28 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     public Object visit(ASTSwitchStmt node, Object data) {
         // TODO
         int numChildren = node.jjtGetNumChildren();
-        String switchFollow = (String) data;
-        String identifier = (String) node.jjtGetChild(0).jjtAccept(this, data);
-        Vector<String> labels = new Vector<String>();
+        Integer switchFollow = (Integer) data;
+        int identifier = operand(node.jjtGetChild(0).jjtAccept(this, data));
+        Vector<Integer> labels = new Vector<Integer>();
         labels.add(switchFollow);
         for (int i = 1; i < numChildren - 1; i++) {
-            String value = (String) node.jjtGetChild(i).jjtGetChild(0).jjtAccept(this, labels);
+            Object value = node.jjtGetChild(i).jjtGetChild(0).jjtAccept(this, labels);
             labels.add(newLabel());
-            m_writer.println("if " + identifier + " == " + EnumValueTable.get(value) + " goto " + labels.get(labels.size() - 1));
+            m_code.branch(identifier, "==", enumOperand(value), labels.get(labels.size() - 1));
             labels.add(newLabel());
-            m_writer.println("goto " + labels.get(labels.size() - 1));
+            m_code.jump(labels.get(labels.size() - 1));
             for (int j = 0; j < labels.size() - 1; j++) {
-                m_writer.println(labels.remove(labels.size() - 2));
+                m_code.label(labels.remove(labels.size() - 2));
             }
             node.jjtGetChild(i).jjtAccept(this, labels);
         }
-        String value = (String) node.jjtGetChild(numChildren - 1).jjtGetChild(0).jjtAccept(this, labels);
+        Object value = node.jjtGetChild(numChildren - 1).jjtGetChild(0).jjtAccept(this, labels);
         labels.add(newLabel());
-        m_writer.println("if " + identifier + " == " + EnumValueTable.get(value) + " goto " + labels.get(labels.size() - 1));
-        m_writer.println("goto " + labels.get(0));
+        m_code.branch(identifier, "==", enumOperand(value), labels.get(labels.size() - 1));
+        m_code.jump(labels.get(0));
         int var = labels.size();
         for (int j = 0; j < var - 1; j++) {
-            m_writer.println(labels.remove(labels.size() - 1));
+            m_code.label(labels.remove(labels.size() - 1));
         }
         node.jjtGetChild(numChildren - 1).jjtAccept(this, labels);
         return null;
@@ -138,22 +189,22 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
         int numChildren = node.jjtGetNumChildren();
         if (numChildren == 0) return null;
         for (int i = 1; i < numChildren; i++) {
-            node.jjtGetChild(i).jjtAccept(this, ((Vector<String>) data).firstElement());
+            node.jjtGetChild(i).jjtAccept(this, ((Vector<Integer>) data).firstElement());
         }
         String lastChildClass = node.jjtGetChild(node.jjtGetNumChildren() - 1).getClass().toString();
-        if (!lastChildClass.equals("class analyzer.ast.ASTBreakStmt") && ((Vector<String>) data).size() > 1) {
-            ((Vector<String>) data).add(newLabel());
-            m_writer.println("goto " + ((Vector<String>) data).get(((Vector<String>) data).size() - 1));
+        if (!lastChildClass.equals("class analyzer.ast.ASTBreakStmt") && ((Vector<Integer>) data).size() > 1) {
+            ((Vector<Integer>) data).add(newLabel());
+            m_code.jump(((Vector<Integer>) data).get(((Vector<Integer>) data).size() - 1));
         }
-        if (((Vector<String>) data).size() > 1)
-            m_writer.println(((Vector<String>) data).remove(1));
+        if (((Vector<Integer>) data).size() > 1)
+            m_code.label(((Vector<Integer>) data).remove(1));
         return null;
     }
 
     @Override
     public Object visit(ASTBreakStmt node, Object data) {
         node.childrenAccept(this, data);
-        m_writer.println("goto " + data);
+        m_code.jump((Integer) data);
         // TODO
         return null;
     }
@@ -172,16 +223,16 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
             case (1):
                 return node.jjtGetChild(0).jjtAccept(this, data);
             case (2):
-                node.jjtGetChild(0).jjtAccept(this, new IntermediateCodeGenFallVisitor.BoolLabel(FALL, (String) data));
+                node.jjtGetChild(0).jjtAccept(this, new IntermediateCodeGenFallVisitor.BoolLabel(FALL, (Integer) data));
                 node.jjtGetChild(1).jjtAccept(this, data);
                 break;
             case (3):
-                String falseLabel = newLabel();
+                int falseLabel = newLabel();
                 IntermediateCodeGenFallVisitor.BoolLabel boolLabel = new IntermediateCodeGenFallVisitor.BoolLabel(FALL, falseLabel);
                 node.jjtGetChild(0).jjtAccept(this, boolLabel);
                 node.jjtGetChild(1).jjtAccept(this, data);
-                m_writer.println("goto " + data);
-                m_writer.println(falseLabel);
+                m_code.jump((Integer) data);
+                m_code.label(falseLabel);
                 node.jjtGetChild(2).jjtAccept(this, data);
                 break;
         }
@@ -191,11 +242,11 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTWhileStmt node, Object data) {
-        String begin = newLabel();
-        m_writer.println(begin);
-        node.jjtGetChild(0).jjtAccept(this, new IntermediateCodeGenFallVisitor.BoolLabel(FALL, (String) data));
+        int begin = newLabel();
+        m_code.label(begin);
+        node.jjtGetChild(0).jjtAccept(this, new IntermediateCodeGenFallVisitor.BoolLabel(FALL, (Integer) data));
         node.jjtGetChild(1).jjtAccept(this, begin);
-        m_writer.println("goto " + begin);
+        m_code.jump(begin);
 
         return null;
     }
@@ -204,17 +255,17 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     public Object visit(ASTForStmt node, Object data) {
         // TODO
 
-        String topLabel = newLabel();
-        String incLabel = newLabel();
-        String condLabel = newLabel();
+        int topLabel = newLabel();
+        int incLabel = newLabel();
+        int condLabel = newLabel();
         node.jjtGetChild(0).jjtAccept(this, topLabel);
-        m_writer.println(topLabel + "TOP");
-        node.jjtGetChild(1).jjtAccept(this, new IntermediateCodeGenFallVisitor.BoolLabel(condLabel, (String) data));
-        m_writer.println(condLabel + "MID");
+        m_code.label(topLabel, "TOP");
+        node.jjtGetChild(1).jjtAccept(this, new IntermediateCodeGenFallVisitor.BoolLabel(condLabel, (Integer) data));
+        m_code.label(condLabel, "MID");
         node.jjtGetChild(3).jjtAccept(this, incLabel);
-        m_writer.println(incLabel + "MID 2");
+        m_code.label(incLabel, "MID 2");
         node.jjtGetChild(2).jjtAccept(this, topLabel);
-        m_writer.println("goto " + topLabel);
+        m_code.jump(topLabel);
         return null;
     }
 
@@ -222,19 +273,19 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     public Object visit(ASTAssignStmt node, Object data) {
         String identifier = ((ASTIdentifier) node.jjtGetChild(0)).getValue();
         // TODO
-        if (SymbolTable.get(identifier) == IntermediateCodeGenFallVisitor.VarType.Number) {
-            m_writer.println(identifier + " = " + node.jjtGetChild(1).jjtAccept(this, data));
-        } else if (SymbolTable.get(identifier) == IntermediateCodeGenFallVisitor.VarType.EnumVar) {
-            String value = (String) node.jjtGetChild(1).jjtAccept(this, data);
-            m_writer.println(identifier + " = " + EnumValueTable.get(value));
+        if (symbolType(identifier) == IntermediateCodeGenFallVisitor.VarType.Number) {
+            m_code.copy(m_code.name(identifier), operand(node.jjtGetChild(1).jjtAccept(this, data)));
+        } else if (symbolType(identifier) == IntermediateCodeGenFallVisitor.VarType.EnumVar) {
+            Object value = node.jjtGetChild(1).jjtAccept(this, data);
+            m_code.copy(m_code.name(identifier), enumOperand(value));
         } else {
-            String secondLabel = newLabel();
+            int secondLabel = newLabel();
             IntermediateCodeGenFallVisitor.BoolLabel boolLabel = new IntermediateCodeGenFallVisitor.BoolLabel(FALL, secondLabel);
             node.jjtGetChild(1).jjtAccept(this, boolLabel);
-            m_writer.println(identifier + " = 1");
-            m_writer.println("goto " + data);
-            m_writer.println(boolLabel.lFalse);
-            m_writer.println(identifier + " = 0");
+            m_code.copy(m_code.name(identifier), m_code.constant(1));
+            m_code.jump((Integer) data);
+            m_code.label(boolLabel.lFalse);
+            m_code.copy(m_code.name(identifier), m_code.constant(0));
         }
         return null;
     }
@@ -245,20 +296,26 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     }
 
     public Object codeExtAddMul(SimpleNode node, Object data, Vector<String> ops) {
-        // À noter qu'il n'est pas nécessaire de boucler sur tous les enfants.
-        // La grammaire n'accepte plus que 2 enfants maximum pour certaines opérations, au lieu de plusieurs
-        // dans les TPs précédents. Vous pouvez vérifier au cas par cas dans le fichier Grammaire.jjt.
-        // TODO
+        // Le noeud a un enfant de plus que d'opérateurs (a + b - c : 3 enfants, 2 opérateurs).
+        // Le code est celui de l'arbre récursif à droite a + (b - c) que construisait la grammaire :
+        // les temporaires sont pris de gauche à droite, les opérations écrites de droite à gauche.
 
         int numChildren = node.jjtGetNumChildren();
         if (numChildren == 1 || ops.isEmpty()) {
             return node.jjtGetChild(0).jjtAccept(this, data);
         } else {
-            String newId = newID();
-            String gauche = (String) node.jjtGetChild(0).jjtAccept(this, data);
-            String droite = (String) node.jjtGetChild(1).jjtAccept(this, data);
-            m_writer.println(newId + " = " + gauche + " " + ops.get(0) + " " + droite);
-            return newId;
+            int[] newIds = new int[numChildren - 1];
+            int[] gauches = new int[numChildren - 1];
+            for (int i = 0; i < numChildren - 1; i++) {
+                newIds[i] = newID();
+                gauches[i] = operand(node.jjtGetChild(i).jjtAccept(this, data));
+            }
+            int droite = operand(node.jjtGetChild(numChildren - 1).jjtAccept(this, data));
+            for (int i = numChildren - 2; i >= 0; i--) {
+                m_code.binary(newIds[i], gauches[i], ops.get(i), droite);
+                droite = newIds[i];
+            }
+            return droite;
         }
     }
 
@@ -275,15 +332,15 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     @Override
     public Object visit(ASTUnaExpr node, Object data) {
         // TODO
-        String idActuel = " ";
+        int idActuel;
         int nbOps = node.getOps().size();
         Object enfant = node.jjtGetChild(0).jjtAccept(this, data);
         if (nbOps > 0) {
             idActuel = newID();
-            m_writer.println(idActuel + " = - " + enfant);
+            m_code.negate(idActuel, operand(enfant));
             for (int i = 1; i < nbOps; i++) {
-                String idProchain = newID();
-                m_writer.println(idProchain + " = - " + idActuel);
+                int idProchain = newID();
+                m_code.negate(idProchain, idActuel);
                 idActuel = idProchain;
             }
             return idActuel;
@@ -293,37 +350,40 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     @Override
     public Object visit(ASTBoolExpr node, Object data) {
         // TODO
+        // a && b || c est évalué comme a && (b || c). Les étiquettes créées pour les opérandes
+        // sont écrites après le dernier opérande, la plus interne en premier.
         int numChildren = node.jjtGetNumChildren();
-        String resp;
+        Object resp = null;
         if (numChildren == 1) {
-            resp = (String) node.jjtGetChild(0).jjtAccept(this, data);
+            resp = node.jjtGetChild(0).jjtAccept(this, data);
         } else {
-            if (node.getOps().get(0).equals("&&")) {
-
+            Integer[] labelsSortie = new Integer[numChildren - 1];
+            for (int i = 0; i < numChildren - 1; i++) {
                 BoolLabel boolLabelGauche = null;
-
-                if (((BoolLabel) data).lFalse == FALL) {
-                    boolLabelGauche = new BoolLabel(FALL, newLabel());
+                if (node.getOps().get(i).equals("&&")) {
+                    if (((BoolLabel) data).lFalse == FALL) {
+                        boolLabelGauche = new BoolLabel(FALL, newLabel());
+                        labelsSortie[i] = boolLabelGauche.lFalse;
+                    } else {
+                        boolLabelGauche = new BoolLabel(FALL, ((BoolLabel) data).lFalse);
+                    }
                 } else {
-                    boolLabelGauche = new BoolLabel(FALL, ((BoolLabel) data).lFalse);
+                    if (((BoolLabel) data).lTrue == FALL) {
+                        boolLabelGauche = new BoolLabel(newLabel(), FALL);
+                        labelsSortie[i] = boolLabelGauche.lTrue;
+                    } else boolLabelGauche = new BoolLabel(((BoolLabel) data).lTrue, FALL);
                 }
-                resp = (String) node.jjtGetChild(0).jjtAccept(this, boolLabelGauche);
-                node.jjtGetChild(1).jjtAccept(this, data);
 
-                if (((BoolLabel) data).lFalse == FALL) {
-                    m_writer.println(boolLabelGauche.lFalse);
+                Object r = node.jjtGetChild(i).jjtAccept(this, boolLabelGauche);
+                if (i == 0) {
+                    resp = r;
                 }
-            } else {
-                BoolLabel boolLabelGauche = null;
-                if (((BoolLabel) data).lTrue == FALL) {
-                    boolLabelGauche = new BoolLabel(newLabel(), FALL);
-                } else boolLabelGauche = new BoolLabel(((BoolLabel) data).lTrue, FALL);
-
-                resp = (String) node.jjtGetChild(0).jjtAccept(this, boolLabelGauche);
-                node.jjtGetChild(1).jjtAccept(this, data);
+            }
+            node.jjtGetChild(numChildren - 1).jjtAccept(this, data);
 
-                if (((BoolLabel) data).lTrue == FALL) {
-                    m_writer.println(boolLabelGauche.lTrue);
+            for (int i = numChildren - 2; i >= 0; i--) {
+                if (labelsSortie[i] != null) {
+                    m_code.label(labelsSortie[i]);
                 }
             }
         }
@@ -337,19 +397,16 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
         if (numChildren == 1) {
             return node.jjtGetChild(0).jjtAccept(this, data);
         } else {
-            String leftChild = (String) node.jjtGetChild(0).jjtAccept(this, data);
-            String rightChild = (String) node.jjtGetChild(1).jjtAccept(this, data);
+            int leftChild = operand(node.jjtGetChild(0).jjtAccept(this, data));
+            int rightChild = operand(node.jjtGetChild(1).jjtAccept(this, data));
             String operator = node.getValue();
             if (((BoolLabel) data).lTrue != FALL && ((BoolLabel) data).lFalse != FALL) {
-                m_writer.println("if " + leftChild + " " + operator + " " + rightChild + " goto " +
-                        ((IntermediateCodeGenFallVisitor.BoolLabel) data).lTrue);
-                m_writer.println("goto " + ((IntermediateCodeGenFallVisitor.BoolLabel) data).lFalse);
+                m_code.branch(leftChild, operator, rightChild, ((IntermediateCodeGenFallVisitor.BoolLabel) data).lTrue);
+                m_code.jump(((IntermediateCodeGenFallVisitor.BoolLabel) data).lFalse);
             } else if (((BoolLabel) data).lTrue != FALL && ((BoolLabel) data).lFalse == FALL) {
-                m_writer.println("if " + leftChild + " " + operator + " " + rightChild + " goto " +
-                        ((IntermediateCodeGenFallVisitor.BoolLabel) data).lTrue);
+                m_code.branch(leftChild, operator, rightChild, ((IntermediateCodeGenFallVisitor.BoolLabel) data).lTrue);
             } else if (((BoolLabel) data).lTrue == FALL && ((BoolLabel) data).lFalse != FALL) {
-                m_writer.println("ifFalse " + leftChild + " " + operator + " " + rightChild + " goto " +
-                        ((IntermediateCodeGenFallVisitor.BoolLabel) data).lFalse);
+                m_code.branchFalse(leftChild, operator, rightChild, ((IntermediateCodeGenFallVisitor.BoolLabel) data).lFalse);
             } else throw new Error();
         }
         return null;
@@ -375,9 +432,9 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     public Object visit(ASTBoolValue node, Object data) {
         // TODO
         if (((BoolLabel) data).lTrue != FALL && node.getValue()) {
-            m_writer.println("goto " + ((BoolLabel) data).lTrue);
+            m_code.jump(((BoolLabel) data).lTrue);
         } else if (((BoolLabel) data).lFalse != FALL && !node.getValue()) {
-            m_writer.println("goto " + ((BoolLabel) data).lFalse);
+            m_code.jump(((BoolLabel) data).lFalse);
         }
         return (node.getValue() ? ((IntermediateCodeGenFallVisitor.BoolLabel) data).lTrue : ((IntermediateCodeGenFallVisitor.BoolLabel) data).lFalse);
     }
@@ -386,23 +443,23 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     public Object visit(ASTIdentifier node, Object data) {
         // TODO
         String val = node.getValue();
-        if (SymbolTable.get(val) == IntermediateCodeGenFallVisitor.VarType.Bool) {
+        if (symbolType(val) == IntermediateCodeGenFallVisitor.VarType.Bool) {
             if (((BoolLabel) data).lTrue != FALL && ((BoolLabel) data).lFalse != FALL) {
-                m_writer.println("if " + val + " == 1 goto " + ((BoolLabel) data).lTrue);
-                m_writer.println("goto " + ((BoolLabel) data).lFalse);
+                m_code.branch(m_code.name(val), "==", m_code.constant(1), ((BoolLabel) data).lTrue);
+                m_code.jump(((BoolLabel) data).lFalse);
             } else if (((BoolLabel) data).lTrue != FALL && ((BoolLabel) data).lFalse == FALL)
-                m_writer.println("if " + val + " == 1 goto " + ((BoolLabel) data).lTrue);
+                m_code.branch(m_code.name(val), "==", m_code.constant(1), ((BoolLabel) data).lTrue);
             else if (((BoolLabel) data).lTrue == FALL && ((BoolLabel) data).lFalse != FALL)
-                m_writer.println("ifFalse " + val + " == 1 goto " + ((BoolLabel) data).lFalse);
+                m_code.branchFalse(m_code.name(val), "==", m_code.constant(1), ((BoolLabel) data).lFalse);
             else
                 throw new Error();
         }
-        return val;
+        return m_code.name(val);
     }
 
     @Override
     public Object visit(ASTIntValue node, Object data) {
-        return Integer.toString(node.getValue());
+        return m_code.constant(node.getValue());
     }
 
     public enum VarType {
@@ -414,10 +471,10 @@ public class IntermediateCodeGenFallVisitor implements ParserVisitor {
     }
 
     private static class BoolLabel {
-        public String lTrue;
-        public String lFalse;
+        public int lTrue;
+        public int lFalse;
 
-        public BoolLabel(String lTrue, String lFalse) {
+        public BoolLabel(int lTrue, int lFalse) {
             this.lTrue = lTrue;
             this.lFalse = lFalse;
         }
@@ -1,9 +1,13 @@
 package analyzer.visitors;
 
 import analyzer.ast.*;
+import analyzer.ir.Code;
+import analyzer.ir.Peephole;
+import analyzer.prelude.Prelude;
 
 import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
 
@@ -18,23 +22,103 @@ import java.util.Vector;
  */
 public class IntermediateCodeGenVisitor implements ParserVisitor {
     private final PrintWriter m_writer;
+    // Le code généré, écrit dans m_writer à la fin du programme
+    private final Code m_code = new Code();
 
     public HashMap<String, VarType> SymbolTable = new HashMap<>();
     public HashMap<String, Integer> EnumValueTable = new HashMap<>();
 
-    private int id = 0;
-    private int label = 0;
+    // Les tables du prélude importé, cherchées quand le fichier ne déclare pas l'identifiant
+    private final Map<String, VarType> m_preludeTypes;
+    private final Map<String, Integer> m_preludeEnumValues;
+
+    // Les valeurs connues des expressions (voir Constants), Constants.NONE pour ne rien plier
+    private final Constants m_constants;
+    private final Peephole m_peephole;
 
     public IntermediateCodeGenVisitor(PrintWriter writer) {
+        this(writer, Prelude.EMPTY);
+    }
+
+    // Le code du programme est celui qu'il aurait à la suite du prélude (voir Prelude)
+    public IntermediateCodeGenVisitor(PrintWriter writer, Prelude prelude) {
+        this(writer, prelude, Constants.NONE);
+    }
+
+    // Une expression dont la valeur est connue est remplacée par cette valeur, et les branches des
+    // if, while et for dont la condition est connue ne sont générées que si elles sont prises
+    public IntermediateCodeGenVisitor(PrintWriter writer, Prelude prelude, Constants constants) {
+        this(writer, prelude, constants, null);
+    }
+
+    // Le code passe par le peephole avant d'être écrit (voir Peephole), null pour l'écrire tel quel
+    public IntermediateCodeGenVisitor(PrintWriter writer, Prelude prelude, Constants constants, Peephole peephole) {
         m_writer = writer;
+        m_preludeTypes = prelude.codeGenTypes();
+        m_preludeEnumValues = prelude.enumValues();
+        m_constants = constants;
+        m_peephole = peephole;
+    }
+
+    private VarType symbolType(String name) {
+        VarType type = SymbolTable.get(name);
+        return type != null ? type : m_preludeTypes.get(name);
+    }
+
+    private Integer enumValue(String name) {
+        Integer value = EnumValueTable.get(name);
+        return value != null ? value : m_preludeEnumValues.get(name);
+    }
+
+    public Code code() {
+        return m_code;
+    }
+
+    private int newID() {
+        return m_code.newTemp();
+    }
+
+    private int newLabel() {
+        return m_code.newLabel();
+    }
+
+    // L'opérande rendu par la visite d'une expression. Une expression mal typée n'en rend pas,
+    // elle est écrite null comme dans le texte des versions précédentes.
+    private static int operand(Object value) {
+        return value == null ? Code.NONE : (Integer) value;
     }
 
-    private String newID() {
-        return "_t" + id++;
+    // La valeur de la constante d'enum nommée par l'opérande
+    private int enumOperand(Object value) {
+        Integer enumValue = enumValue(m_code.text(operand(value)));
+        return enumValue == null ? Code.NONE : m_code.constant(enumValue);
     }
 
-    private String newLabel() {
-        return "_L" + label++;
+    // Visite le noeud, sauf si sa valeur est connue (voir Constants) : son code est alors celui
+    // de la constante
+    private Object dispatch(Node node, Object data) {
+        Object value = m_constants.valueOf(node);
+        if (value != null) {
+            return constant(value, data);
+        }
+        return node.jjtAccept(this, data);
+    }
+
+    // Le code d'une expression dont la valeur est connue : le littéral d'un nombre, le saut à
+    // l'étiquette de la valeur d'une condition
+    private Object constant(Object value, Object data) {
+        if (value instanceof Boolean) {
+            m_code.jump((Boolean) value ? ((BoolLabel) data).lTrue : ((BoolLabel) data).lFalse);
+            return null;
+        }
+        return m_code.constant((Integer) value);
+    }
+
+    private void childrenDispatch(Node node, Object data) {
+        int numChildren = node.jjtGetNumChildren();
+        for (int i = 0; i < numChildren; i++) {
+            dispatch(node.jjtGetChild(i), data);
+        }
     }
 
     @Override
@@ -44,10 +128,14 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTProgram node, Object data) {
-        String label = newLabel();
-        node.childrenAccept(this, label);
+        int label = newLabel();
+        childrenDispatch(node, label);
         // TODO
-        m_writer.println(label);
+        m_code.label(label);
+        if (m_peephole != null) {
+            m_peephole.run(m_code);
+        }
+        m_code.print(m_writer);
         return null;
     }
 
@@ -72,16 +160,16 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
         int numChildren = node.jjtGetNumChildren();
         if (numChildren == 0) return null;
         else if (numChildren == 1) {
-            return node.jjtGetChild(0).jjtAccept(this, data);
+            return dispatch(node.jjtGetChild(0), data);
         } else {
             int i = 0;
             while (i < numChildren - 1) {
-                String label = newLabel();
-                node.jjtGetChild(i).jjtAccept(this, label);
-                m_writer.println(label);
+                int label = newLabel();
+                dispatch(node.jjtGetChild(i), label);
+                m_code.label(label);
                 i++;
             }
-            node.jjtGetChild(i).jjtAccept(this, data);
+            dispatch(node.jjtGetChild(i), data);
         }
         return null;
     }
@@ -94,72 +182,72 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
             SymbolTable.put(enumName, VarType.EnumType);
             EnumValueTable.put(enumName, i - 1);
         }
-        node.childrenAccept(this, data);
+        childrenDispatch(node, data);
         // TODO
         return null;
     }
 
     @Override
     public Object visit(ASTSwitchStmt node, Object data) {
-        //node.childrenAccept(this, data);
+        //childrenDispatch(node, data);
         // TODO
         int numChildren = node.jjtGetNumChildren();
-        String switchFollow = (String) data;
-        String identifier = (String) node.jjtGetChild(0).jjtAccept(this, data);
+        Integer switchFollow = (Integer) data;
+        int identifier = operand(dispatch(node.jjtGetChild(0), data));
         // String topLabel = newLabel();
-        Vector<String> labels = new Vector<String>();
+        Vector<Integer> labels = new Vector<Integer>();
         labels.add(switchFollow);
         for (int i = 1; i < numChildren - 1; i++) {
             labels.add(newLabel());
-            String value = (String) node.jjtGetChild(i).jjtGetChild(0).jjtAccept(this, labels);
-            m_writer.println("if " + identifier + " != " + EnumValueTable.get(value) + " goto " + labels.get(labels.size() - 1));
+            Object value = dispatch(node.jjtGetChild(i).jjtGetChild(0), labels);
+            m_code.branch(identifier, "!=", enumOperand(value), labels.get(labels.size() - 1));
             if (labels.size() >= 3) {
-                m_writer.println(labels.remove(labels.size() - 2));
+                m_code.label(labels.remove(labels.size() - 2));
             }
             // m_writer.println("goto _L" + label);
-            node.jjtGetChild(i).jjtAccept(this, labels);
+            dispatch(node.jjtGetChild(i), labels);
         }
-        String value = (String) node.jjtGetChild(numChildren - 1).jjtGetChild(0).jjtAccept(this, labels);
-        m_writer.println("if " + identifier + " != " + EnumValueTable.get(value) + " goto " + data);
+        Object value = dispatch(node.jjtGetChild(numChildren - 1).jjtGetChild(0), labels);
+        m_code.branch(identifier, "!=", enumOperand(value), (Integer) data);
         if (labels.size() >= 2) {
-            m_writer.println(labels.remove(labels.size() - 1));
+            m_code.label(labels.remove(labels.size() - 1));
         }
-        node.jjtGetChild(numChildren - 1).jjtAccept(this, labels);
+        dispatch(node.jjtGetChild(numChildren - 1), labels);
         return null;
     }
 
     @Override
     public Object visit(ASTCaseStmt node, Object data) {
-        // node.childrenAccept(this, data);
+        // childrenDispatch(node, data);
         // TODO
 
         // m_writer.println("if " + identifier + " != " + value + " goto " + data);
         int numChildren = node.jjtGetNumChildren();
         if (numChildren == 0) return null;
         for (int i = 1; i < numChildren; i++) {
-            node.jjtGetChild(i).jjtAccept(this, ((Vector<String>) data).firstElement());
+            dispatch(node.jjtGetChild(i), ((Vector<Integer>) data).firstElement());
         }
         String lastChildClass = node.jjtGetChild(node.jjtGetNumChildren() - 1).getClass().toString();
-        if (!lastChildClass.equals("class analyzer.ast.ASTBreakStmt") && ((Vector<String>) data).size() > 1) {
-            ((Vector<String>) data).add(newLabel());
-            m_writer.println("goto " + ((Vector<String>) data).get(((Vector<String>) data).size() - 1));
+        if (!lastChildClass.equals("class analyzer.ast.ASTBreakStmt") && ((Vector<Integer>) data).size() > 1) {
+            ((Vector<Integer>) data).add(newLabel());
+            m_code.jump(((Vector<Integer>) data).get(((Vector<Integer>) data).size() - 1));
         }
-        if (((Vector<String>) data).size() > 1)
-            m_writer.println(((Vector<String>) data).remove(1));
+        if (((Vector<Integer>) data).size() > 1)
+            m_code.label(((Vector<Integer>) data).remove(1));
         return null;
     }
 
     @Override
     public Object visit(ASTBreakStmt node, Object data) {
-        node.childrenAccept(this, data);
-        m_writer.println("goto " + data);
+        childrenDispatch(node, data);
+        m_code.jump((Integer) data);
         // TODO
         return null;
     }
 
     @Override
     public Object visit(ASTStmt node, Object data) {
-        node.childrenAccept(this, data);
+        childrenDispatch(node, data);
 
         return null;
     }
@@ -167,25 +255,35 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     @Override
     public Object visit(ASTIfStmt node, Object data) {
         int numChildren = node.jjtGetNumChildren();
+        Object condition = m_constants.valueOf(node.jjtGetChild(0));
+        if (condition instanceof Boolean) {
+            // Seule la branche prise est générée
+            if ((Boolean) condition) {
+                dispatch(node.jjtGetChild(1), data);
+            } else if (numChildren == 3) {
+                dispatch(node.jjtGetChild(2), data);
+            }
+            return null;
+        }
         switch (numChildren) {
             case (1):
-                return node.jjtGetChild(0).jjtAccept(this, data);
+                return dispatch(node.jjtGetChild(0), data);
             case (2):
-                String ifLabel = newLabel();
-                node.jjtGetChild(0).jjtAccept(this, new BoolLabel(ifLabel, (String) data));
-                m_writer.println(ifLabel);
-                node.jjtGetChild(1).jjtAccept(this, data);
+                int ifLabel = newLabel();
+                dispatch(node.jjtGetChild(0), new BoolLabel(ifLabel, (Integer) data));
+                m_code.label(ifLabel);
+                dispatch(node.jjtGetChild(1), data);
                 break;
             case (3):
-                String trueLabel = newLabel();
-                String falseLabel = newLabel();
+                int trueLabel = newLabel();
+                int falseLabel = newLabel();
                 BoolLabel boolLabel = new BoolLabel(trueLabel, falseLabel);
-                node.jjtGetChild(0).jjtAccept(this, boolLabel);
-                m_writer.println(trueLabel);
-                node.jjtGetChild(1).jjtAccept(this, data);
-                m_writer.println("goto " + data);
-                m_writer.println(falseLabel);
-                node.jjtGetChild(2).jjtAccept(this, data);
+                dispatch(node.jjtGetChild(0), boolLabel);
+                m_code.label(trueLabel);
+                dispatch(node.jjtGetChild(1), data);
+                m_code.jump((Integer) data);
+                m_code.label(falseLabel);
+                dispatch(node.jjtGetChild(2), data);
                 break;
         }
         // TODO
@@ -194,13 +292,24 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTWhileStmt node, Object data) {
-        String begin = newLabel();
-        String vrai = newLabel();
-        m_writer.println(begin);
-        node.jjtGetChild(0).jjtAccept(this, new BoolLabel(vrai, (String) data));
-        m_writer.println(vrai);
-        node.jjtGetChild(1).jjtAccept(this, begin);
-        m_writer.println("goto " + begin);
+        Object condition = m_constants.valueOf(node.jjtGetChild(0));
+        if (Boolean.FALSE.equals(condition)) {
+            return null;
+        } else if (Boolean.TRUE.equals(condition)) {
+            int begin = newLabel();
+            m_code.label(begin);
+            dispatch(node.jjtGetChild(1), begin);
+            m_code.jump(begin);
+            return null;
+        }
+
+        int begin = newLabel();
+        int vrai = newLabel();
+        m_code.label(begin);
+        dispatch(node.jjtGetChild(0), new BoolLabel(vrai, (Integer) data));
+        m_code.label(vrai);
+        dispatch(node.jjtGetChild(1), begin);
+        m_code.jump(begin);
 
         return null;
     }
@@ -208,18 +317,32 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     @Override
     public Object visit(ASTForStmt node, Object data) {
         // TODO
+        Object condition = m_constants.valueOf(node.jjtGetChild(1));
+        if (Boolean.FALSE.equals(condition)) {
+            return dispatch(node.jjtGetChild(0), data);
+        } else if (Boolean.TRUE.equals(condition)) {
+            int topLabel = newLabel();
+            int incLabel = newLabel();
+            dispatch(node.jjtGetChild(0), topLabel);
+            m_code.label(topLabel);
+            dispatch(node.jjtGetChild(3), incLabel);
+            m_code.label(incLabel);
+            dispatch(node.jjtGetChild(2), topLabel);
+            m_code.jump(topLabel);
+            return null;
+        }
 
-        String topLabel = newLabel();
-        String incLabel = newLabel();
-        String condLabel = newLabel();
-        node.jjtGetChild(0).jjtAccept(this, topLabel);
-        m_writer.println(topLabel);
-        node.jjtGetChild(1).jjtAccept(this, new BoolLabel(condLabel, (String) data));
-        m_writer.println(condLabel);
-        node.jjtGetChild(3).jjtAccept(this, incLabel);
-        m_writer.println(incLabel);
-        node.jjtGetChild(2).jjtAccept(this, topLabel);
-        m_writer.println("goto " + topLabel);
+        int topLabel = newLabel();
+        int incLabel = newLabel();
+        int condLabel = newLabel();
+        dispatch(node.jjtGetChild(0), topLabel);
+        m_code.label(topLabel);
+        dispatch(node.jjtGetChild(1), new BoolLabel(condLabel, (Integer) data));
+        m_code.label(condLabel);
+        dispatch(node.jjtGetChild(3), incLabel);
+        m_code.label(incLabel);
+        dispatch(node.jjtGetChild(2), topLabel);
+        m_code.jump(topLabel);
         return null;
     }
 
@@ -227,43 +350,51 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     public Object visit(ASTAssignStmt node, Object data) {
         String identifier = ((ASTIdentifier) node.jjtGetChild(0)).getValue();
         // TODO
-        if (SymbolTable.get(identifier) == VarType.Number) {
-            m_writer.println(identifier + " = " + node.jjtGetChild(1).jjtAccept(this, data));
-        } else if (SymbolTable.get(identifier) == VarType.EnumVar) {
-            String value = (String) node.jjtGetChild(1).jjtAccept(this, data);
-            m_writer.println(identifier + " = " + EnumValueTable.get(value));
+        if (symbolType(identifier) == VarType.Number) {
+            m_code.copy(m_code.name(identifier), operand(dispatch(node.jjtGetChild(1), data)));
+        } else if (symbolType(identifier) == VarType.EnumVar) {
+            Object value = dispatch(node.jjtGetChild(1), data);
+            m_code.copy(m_code.name(identifier), enumOperand(value));
+        } else if (m_constants.valueOf(node.jjtGetChild(1)) instanceof Boolean) {
+            m_code.copy(m_code.name(identifier), m_code.constant((Boolean) m_constants.valueOf(node.jjtGetChild(1)) ? 1 : 0));
         } else {
             BoolLabel boolLabel = new BoolLabel(newLabel(), newLabel());
-            node.jjtGetChild(1).jjtAccept(this, boolLabel);
-            m_writer.println(boolLabel.lTrue);
-            m_writer.println(identifier + " = 1");
-            m_writer.println("goto " + data);
-            m_writer.println(boolLabel.lFalse);
-            m_writer.println(identifier + " = 0");
+            dispatch(node.jjtGetChild(1), boolLabel);
+            m_code.label(boolLabel.lTrue);
+            m_code.copy(m_code.name(identifier), m_code.constant(1));
+            m_code.jump((Integer) data);
+            m_code.label(boolLabel.lFalse);
+            m_code.copy(m_code.name(identifier), m_code.constant(0));
         }
         return null;
     }
 
     @Override
     public Object visit(ASTExpr node, Object data) {
-        return node.jjtGetChild(0).jjtAccept(this, data);
+        return dispatch(node.jjtGetChild(0), data);
     }
 
     public Object codeExtAddMul(SimpleNode node, Object data, Vector<String> ops) {
-        // À noter qu'il n'est pas nécessaire de boucler sur tous les enfants.
-        // La grammaire n'accepte plus que 2 enfants maximum pour certaines opérations, au lieu de plusieurs
-        // dans les TPs précédents. Vous pouvez vérifier au cas par cas dans le fichier Grammaire.jjt.
-        // TODO
+        // Le noeud a un enfant de plus que d'opérateurs (a + b - c : 3 enfants, 2 opérateurs).
+        // Le code est celui de l'arbre récursif à droite a + (b - c) que construisait la grammaire :
+        // les temporaires sont pris de gauche à droite, les opérations écrites de droite à gauche.
 
         int numChildren = node.jjtGetNumChildren();
         if (numChildren == 1 || ops.isEmpty()) {
-            return node.jjtGetChild(0).jjtAccept(this, data);
+            return dispatch(node.jjtGetChild(0), data);
         } else {
-            String newId = newID();
-            String gauche = (String) node.jjtGetChild(0).jjtAccept(this, data);
-            String droite = (String) node.jjtGetChild(1).jjtAccept(this, data);
-            m_writer.println(newId + " = " + gauche + " " + ops.get(0) + " " + droite);
-            return newId;
+            int[] newIds = new int[numChildren - 1];
+            int[] gauches = new int[numChildren - 1];
+            for (int i = 0; i < numChildren - 1; i++) {
+                newIds[i] = newID();
+                gauches[i] = operand(dispatch(node.jjtGetChild(i), data));
+            }
+            int droite = operand(dispatch(node.jjtGetChild(numChildren - 1), data));
+            for (int i = numChildren - 2; i >= 0; i--) {
+                m_code.binary(newIds[i], gauches[i], ops.get(i), droite);
+                droite = newIds[i];
+            }
+            return droite;
         }
     }
 
@@ -280,15 +411,15 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     @Override
     public Object visit(ASTUnaExpr node, Object data) {
         // TODO
-        String idActuel = " ";
+        int idActuel;
         int nbOps = node.getOps().size();
-        Object enfant = node.jjtGetChild(0).jjtAccept(this, data);
+        Object enfant = dispatch(node.jjtGetChild(0), data);
         if (nbOps > 0) {
             idActuel = newID();
-            m_writer.println(idActuel + " = - " + enfant);
+            m_code.negate(idActuel, operand(enfant));
             for (int i = 1; i < nbOps; i++) {
-                String idProchain = newID();
-                m_writer.println(idProchain + " = - " + idActuel);
+                int idProchain = newID();
+                m_code.negate(idProchain, idActuel);
                 idActuel = idProchain;
             }
             return idActuel;
@@ -299,21 +430,22 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     public Object visit(ASTBoolExpr node, Object data) {
         // TODO
 
+        // a && b || c est évalué comme a && (b || c) : chaque opérande sauf le dernier saute à
+        // l'étiquette du suivant, le dernier reçoit les étiquettes du noeud
         int numChildren = node.jjtGetNumChildren();
         if (numChildren == 1) {
-            return node.jjtGetChild(0).jjtAccept(this, data);
+            return dispatch(node.jjtGetChild(0), data);
         } else {
-            if (node.getOps().get(0).equals("&&")) {
-                String newLabel = newLabel();
-                node.jjtGetChild(0).jjtAccept(this, new BoolLabel(newLabel, ((BoolLabel) data).lFalse));
-                m_writer.println(newLabel);
-                node.jjtGetChild(1).jjtAccept(this, data);
-            } else {
-                String newLabel = newLabel();
-                node.jjtGetChild(0).jjtAccept(this, new BoolLabel(((BoolLabel) data).lTrue, newLabel));
-                m_writer.println(newLabel);
-                node.jjtGetChild(1).jjtAccept(this, data);
+            for (int i = 0; i < numChildren - 1; i++) {
+                int newLabel = newLabel();
+                if (node.getOps().get(i).equals("&&")) {
+                    dispatch(node.jjtGetChild(i), new BoolLabel(newLabel, ((BoolLabel) data).lFalse));
+                } else {
+                    dispatch(node.jjtGetChild(i), new BoolLabel(((BoolLabel) data).lTrue, newLabel));
+                }
+                m_code.label(newLabel);
             }
+            dispatch(node.jjtGetChild(numChildren - 1), data);
         }
         return null;
     }
@@ -323,11 +455,12 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
         // TODO
         int numChildren = node.jjtGetNumChildren();
         if (numChildren == 1) {
-            return node.jjtGetChild(0).jjtAccept(this, data);
+            return dispatch(node.jjtGetChild(0), data);
         } else {
-            m_writer.println("if " + node.jjtGetChild(0).jjtAccept(this, data) + " " + node.getValue() + " "
-                    + node.jjtGetChild(1).jjtAccept(this, data) + " goto " + ((BoolLabel) data).lTrue);
-            m_writer.println("goto " + ((BoolLabel) data).lFalse);
+            int gauche = operand(dispatch(node.jjtGetChild(0), data));
+            int droite = operand(dispatch(node.jjtGetChild(1), data));
+            m_code.branch(gauche, node.getValue(), droite, ((BoolLabel) data).lTrue);
+            m_code.jump(((BoolLabel) data).lFalse);
         }
         return null;
     }
@@ -336,14 +469,13 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     public Object visit(ASTNotExpr node, Object data) {
         // TODO
         if (!(node.getOps().size() % 2 == 0)) {
-            return node.jjtGetChild(0).
-                    jjtAccept(this, new BoolLabel(((BoolLabel) data).lFalse, ((BoolLabel) data).lTrue));
-        } else return node.jjtGetChild(0).jjtAccept(this, data);
+            return dispatch(node.jjtGetChild(0), new BoolLabel(((BoolLabel) data).lFalse, ((BoolLabel) data).lTrue));
+        } else return dispatch(node.jjtGetChild(0), data);
     }
 
     @Override
     public Object visit(ASTGenValue node, Object data) {
-        return node.jjtGetChild(0).jjtAccept(this, data);
+        return dispatch(node.jjtGetChild(0), data);
         // TODO
         //return null;
     }
@@ -351,7 +483,7 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     @Override
     public Object visit(ASTBoolValue node, Object data) {
         // TODO
-        m_writer.println("goto " + (node.getValue() ? ((BoolLabel) data).lTrue : ((BoolLabel) data).lFalse));
+        m_code.jump(node.getValue() ? ((BoolLabel) data).lTrue : ((BoolLabel) data).lFalse);
         return null;
     }
 
@@ -359,16 +491,16 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     public Object visit(ASTIdentifier node, Object data) {
         // TODO
         String val = node.getValue();
-        if (SymbolTable.get(val) == VarType.Bool) {
-            m_writer.println("if " + val + " == 1 goto " + ((BoolLabel) data).lTrue);
-            m_writer.println("goto " + ((BoolLabel) data).lFalse);
+        if (symbolType(val) == VarType.Bool) {
+            m_code.branch(m_code.name(val), "==", m_code.constant(1), ((BoolLabel) data).lTrue);
+            m_code.jump(((BoolLabel) data).lFalse);
         }
-        return val;
+        return m_code.name(val);
     }
 
     @Override
     public Object visit(ASTIntValue node, Object data) {
-        return Integer.toString(node.getValue());
+        return m_code.constant(node.getValue());
     }
 
     public enum VarType {
@@ -380,10 +512,10 @@ public class IntermediateCodeGenVisitor implements ParserVisitor {
     }
 
     private static class BoolLabel {
-        public String lTrue;
-        public String lFalse;
+        public int lTrue;
+        public int lFalse;
 
-        public BoolLabel(String lTrue, String lFalse) {
+        public BoolLabel(int lTrue, int lFalse) {
             this.lTrue = lTrue;
             this.lFalse = lFalse;
         }
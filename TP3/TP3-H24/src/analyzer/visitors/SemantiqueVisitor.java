@@ -2,9 +2,12 @@ package analyzer.visitors;
 
 import analyzer.SemantiqueError;
 import analyzer.ast.*;
+import analyzer.prelude.Prelude;
 
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 
 
 /**
@@ -21,8 +24,26 @@ public class SemantiqueVisitor implements ParserVisitor {
 
     public HashMap<String, VarType> SymbolTable = new HashMap<>();
 
+    // Les types du prélude importé, cherchés quand le fichier ne déclare pas l'identifiant
+    private final Map<String, VarType> m_preludeTypes;
+
+    private final TreeWalker m_walker = new TreeWalker();
+    private final ExprTypes m_exprTypes = new ExprTypes();
+
     public SemantiqueVisitor(PrintWriter writer) {
+        this(writer, Prelude.EMPTY);
+    }
+
+    // Le programme est vérifié comme s'il suivait le prélude (voir Prelude)
+    public SemantiqueVisitor(PrintWriter writer, Prelude prelude) {
         m_writer = writer;
+        m_preludeTypes = prelude.semantiqueTypes();
+    }
+
+    // Le type de l'identifiant, déclaré dans le fichier ou sinon dans le prélude ; null s'il n'est pas déclaré
+    private VarType symbolType(String name) {
+        VarType type = SymbolTable.get(name);
+        return type != null ? type : m_preludeTypes.get(name);
     }
 
     /*
@@ -104,8 +125,8 @@ public class SemantiqueVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTIfStmt node, Object data) {
-        DataStruct firstD = (DataStruct) node.jjtGetChild(0).jjtAccept(this, data);
-        if (!estCompatible(firstD.type, VarType.Bool)) {
+        VarType condition = m_exprTypes.typeOf(node.jjtGetChild(0));
+        if (!estCompatible(condition, VarType.Bool)) {
             throw new SemantiqueError("Invalid type in condition");
         }
         for (int i = 1; i < node.jjtGetNumChildren(); i++) {
@@ -117,8 +138,8 @@ public class SemantiqueVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTWhileStmt node, Object data) {
-        DataStruct firstD = (DataStruct) node.jjtGetChild(0).jjtAccept(this, data);
-        if (!estCompatible(firstD.type, VarType.Bool)) {
+        VarType condition = m_exprTypes.typeOf(node.jjtGetChild(0));
+        if (!estCompatible(condition, VarType.Bool)) {
             throw new SemantiqueError("Invalid type in condition");
         }
         for (int i = 1; i < node.jjtGetNumChildren(); i++) {
@@ -135,158 +156,191 @@ public class SemantiqueVisitor implements ParserVisitor {
 
     @Override
     public Object visit(ASTAssignStmt node, Object data) {
-        DataStruct assignId = (DataStruct) node.jjtGetChild(0).jjtAccept(this, data);
-        DataStruct assignExpr = (DataStruct) node.jjtGetChild(1).jjtAccept(this, data);
-        if (!estCompatible(assignId.type, assignExpr.type)) {
+        VarType assignId = (VarType) node.jjtGetChild(0).jjtAccept(this, data);
+        VarType assignExpr = m_exprTypes.typeOf(node.jjtGetChild(1));
+        if (!estCompatible(assignId, assignExpr)) {
             throw new SemantiqueError("Invalid type in assignment");
         }
         return data;
     }
 
+    // Les expressions sont typées sans récursion (voir ExprTypes), les autres visites d'un noeud
+    // d'expression font de même pour le sous-arbre du noeud. Elles retournent le type (un VarType)
+    // sans allouer d'objet pour le transporter.
     @Override
     public Object visit(ASTExpr node, Object data) {
-        return node.jjtGetChild(0).jjtAccept(this, data);
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
     public Object visit(ASTBoolExpr node, Object data) {
-
-        return visitExprAst(node, data, VarType.Bool);
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
     public Object visit(ASTCompExpr node, Object data) {
-        DataStruct firstD = (DataStruct) node.jjtGetChild(0).jjtAccept(this, data);
-        String op = node.getValue();
-
-        VarType expectedType = VarType.Number;
-
-        VarType newType = firstD.type;
-        if (op != null) {
-            if (op.equals("==") || op.equals("!=")) {
-                expectedType = firstD.type;
-
-            }
-            newType = VarType.Bool;
-        }
-
-        for (int i = 1; i < node.jjtGetNumChildren(); i++) {
-            DataStruct d = (DataStruct) node.jjtGetChild(i).jjtAccept(this, data);
-            firstD.checkType(d, expectedType);
-        }
-        firstD.type = newType;
-        return firstD;
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
     public Object visit(ASTAddExpr node, Object data) {
-        return visitExprAst(node, data, VarType.Number);
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
     public Object visit(ASTMulExpr node, Object data) {
-        return visitExprAst(node, data, VarType.Number);
+        return m_exprTypes.typeOf(node);
     }
 
 
     //Unary operator
     @Override
     public Object visit(ASTNotExpr node, Object data) {
-        Boolean haveOp = node.getOps().size() > 0;
-
-        DataStruct firstD = (DataStruct) node.jjtGetChild(0).jjtAccept(this, data);
-
-        if (haveOp) {
-            firstD.checkType(VarType.Bool);
-        }
-        return firstD;
+        return m_exprTypes.typeOf(node);
     }
 
     @Override
     public Object visit(ASTUnaExpr node, Object data) {
-        Boolean haveOp = node.getOps().size() > 0;
-
-        DataStruct firstD = (DataStruct) node.jjtGetChild(0).jjtAccept(this, data);
-
-        if (haveOp) {
-            firstD.checkType(VarType.Number);
-        }
-        return firstD;
-    }
-
-    private DataStruct visitExprAst(SimpleNode node, Object data, VarType expectedType) {
-        DataStruct firstD = (DataStruct) node.jjtGetChild(0).jjtAccept(this, data);
-
-        for (int i = 1; i < node.jjtGetNumChildren(); i++) {
-            DataStruct d = (DataStruct) node.jjtGetChild(i).jjtAccept(this, data);
-            firstD.checkType(d, expectedType);
-        }
-        return firstD;
+        return m_exprTypes.typeOf(node);
     }
 
 
     @Override
     public Object visit(ASTGenValue node, Object data) {
-        return node.jjtGetChild(0).jjtAccept(this, data);
+        return m_exprTypes.typeOf(node);
     }
 
 
     @Override
     public Object visit(ASTBoolValue node, Object data) {
-        DataStruct d = new DataStruct(VarType.Bool);
-        return d;
+        return VarType.Bool;
     }
 
 
     @Override
     public Object visit(ASTIdentifier node, Object data) {
-        DataStruct d = new DataStruct();
+        VarType type = null;
 
         if (data == null || !data.equals("declaration")) {
-            if (SymbolTable.get(node.getValue()) != null) {
-                d.type = SymbolTable.get(node.getValue());
-            } else {
+            type = symbolType(node.getValue());
+            if (type == null) {
                 throw new SemantiqueError("Invalid use of undefined Identifier " + node.getValue());
             }
         }
-        return d;
+        return type;
     }
 
     @Override
     public Object visit(ASTIntValue node, Object data) {
-        return new DataStruct(VarType.Number);
+        return VarType.Number;
     }
 
     private boolean estCompatible(VarType a, VarType b) {
         return a == b;
     }
 
-    //des outils pour vous simplifier la vie et vous enligner dans le travail
-    public enum VarType {
-        Bool,
-        Number
+    private void checkType(VarType type, VarType expectedType) {
+        if (!estCompatible(type, expectedType)) {
+            throw new SemantiqueError("Invalid type in expression got " + type.toString() + " was expecting " + expectedType);
+        }
     }
 
-    private class DataStruct {
-        public VarType type;
+    private void checkType(VarType type, VarType other, VarType expectedType) {
+        if (!estCompatible(type, expectedType) || !estCompatible(other, expectedType)) {
+            throw new SemantiqueError("Invalid type in expression got " + type.toString() + " and " + other.toString() + " was expecting " + expectedType);
+        }
+    }
 
-        public DataStruct() {
+    /**
+     * Calcule le type d'une expression avec un parcours itératif (voir TreeWalker), la profondeur
+     * des parenthèses n'est donc pas limitée par la pile d'appels. À sa sortie, chaque noeud
+     * remplace les types de ses enfants sur la pile par le sien.
+     *
+     * Les vérifications sont celles des anciennes visites récursives, dans le même ordre : les
+     * opérandes d'un BoolExpr, AddExpr ou MulExpr sont tous typés, puis vérifiés deux à deux
+     * de droite à gauche comme dans l'arbre récursif à droite a + (b + c).
+     */
+    private class ExprTypes implements TreeWalker.Listener {
+        private VarType[] m_types = new VarType[16];
+        private int m_size = 0;
+
+        VarType typeOf(Node node) {
+            m_size = 0;
+            m_walker.walk(node, this);
+            return m_types[0];
         }
 
-        public DataStruct(VarType p_type) {
-            type = p_type;
+        @Override
+        public boolean enter(Node node) {
+            return true;
         }
 
-        public void checkType(VarType expectedType) {
-            if (!estCompatible(type, expectedType)) {
-                throw new SemantiqueError("Invalid type in expression got " + type.toString() + " was expecting " + expectedType);
+        @Override
+        public void exit(Node node) {
+            int numChildren = node.jjtGetNumChildren();
+            int first = m_size - numChildren;
+            switch (((SimpleNode) node).getId()) {
+                case ParserTreeConstants.JJTIDENTIFIER: {
+                    VarType type = symbolType(((ASTIdentifier) node).getValue());
+                    if (type == null) {
+                        throw new SemantiqueError("Invalid use of undefined Identifier " + ((ASTIdentifier) node).getValue());
+                    }
+                    push(type);
+                    break;
+                }
+                case ParserTreeConstants.JJTINTVALUE:
+                    push(VarType.Number);
+                    break;
+                case ParserTreeConstants.JJTBOOLVALUE:
+                    push(VarType.Bool);
+                    break;
+                case ParserTreeConstants.JJTNOTEXPR:
+                    if (((ASTNotExpr) node).getOps().size() > 0) {
+                        checkType(m_types[first], VarType.Bool);
+                    }
+                    break;
+                case ParserTreeConstants.JJTUNAEXPR:
+                    if (((ASTUnaExpr) node).getOps().size() > 0) {
+                        checkType(m_types[first], VarType.Number);
+                    }
+                    break;
+                case ParserTreeConstants.JJTCOMPEXPR: {
+                    String op = ((ASTCompExpr) node).getValue();
+                    if (op != null) {
+                        VarType expectedType = op.equals("==") || op.equals("!=") ? m_types[first] : VarType.Number;
+                        checkType(m_types[first], m_types[first + 1], expectedType);
+                        m_types[first] = VarType.Bool;
+                    }
+                    m_size = first + 1;
+                    break;
+                }
+                case ParserTreeConstants.JJTBOOLEXPR:
+                case ParserTreeConstants.JJTADDEXPR:
+                case ParserTreeConstants.JJTMULEXPR: {
+                    VarType expectedType = node instanceof ASTBoolExpr ? VarType.Bool : VarType.Number;
+                    for (int i = m_size - 2; i >= first; i--) {
+                        checkType(m_types[i], m_types[i + 1], expectedType);
+                    }
+                    m_size = first + 1;
+                    break;
+                }
+                default:
+                    // Expr et GenValue ont le type de leur seul enfant
+                    break;
             }
         }
 
-        public void checkType(DataStruct d, VarType expectedType) {
-            if (!estCompatible(type, expectedType) || !estCompatible(d.type, expectedType)) {
-                throw new SemantiqueError("Invalid type in expression got " + type.toString() + " and " + d.type.toString() + " was expecting " + expectedType);
+        private void push(VarType type) {
+            if (m_size == m_types.length) {
+                m_types = Arrays.copyOf(m_types, m_size * 2);
             }
+            m_types[m_size++] = type;
         }
     }
+
+    //des outils pour vous simplifier la vie et vous enligner dans le travail
+    public enum VarType {
+        Bool,
+        Number
+    }
 }
@@ -19,7 +19,13 @@ import analyzer.tests.*;
 @Suite.SuiteClasses({
         SemantiqueTest.class,
         IntermediateCodeGenTest.class,
-        IntermediateCodeGenFallTest.class
+        IntermediateCodeGenFallTest.class,
+        IntermediateCodeGenFoldTest.class,
+        IntermediateCodeGenIRTest.class,
+        IntermediateCodeGenPeepholeTest.class,
+        AstCacheTest.class,
+        PreludeTest.class,
+        MappedCharStreamTest.class
 })
 
 public class TestSuite {
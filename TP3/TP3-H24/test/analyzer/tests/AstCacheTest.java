@@ -0,0 +1,203 @@
+package analyzer.tests;
+
+import analyzer.ast.ASTProgram;
+import analyzer.ast.CompactTree;
+import analyzer.ast.Parser;
+import analyzer.cache.AstCache;
+import analyzer.visitors.IntermediateCodeGenVisitor;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Description: This test the cache of parsed trees (see AstCache). Every program is parsed through
+ * a cache in an empty folder: found again, then after its entry was damaged, cut or written by an
+ * older version, then in a cache too small for two entries, and by many threads at once. The tree
+ * of the cache must always be the one of the parser, and the size of the cache the size of its
+ * entries on disk. The expected file has the hits, misses and entries after every step, then the
+ * code generated from the tree found in the cache.
+ */
+
+@RunWith(Parameterized.class)
+public class AstCacheTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/AstCacheTest/data";
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 20;
+
+    private final File m_file;
+
+    public AstCacheTest(File file) {
+        super(file);
+        m_file = file;
+    }
+
+    @Test
+    public void run() throws Exception {
+        byte[] source = Files.readAllBytes(m_file.toPath());
+        byte[] parsed = encode(Parser.ParseTree(new ByteArrayInputStream(source)));
+        Path folder = Files.createTempDirectory("ast");
+        try {
+            AstCache cache = new AstCache(folder, Long.MAX_VALUE);
+            Assert.assertArrayEquals(parsed, encode(cache.parse(source)));
+            report("Parse", cache, folder);
+            ASTProgram root = cache.parse(source);
+            Assert.assertArrayEquals(parsed, encode(root));
+            report("Again", cache, folder);
+            Path entry = entries(folder).get(0);
+
+            // A damaged entry is parsed again, and replaced
+            byte[] content = Files.readAllBytes(entry);
+            content[content.length / 2] ^= 0x10;
+            Files.write(entry, content);
+            Assert.assertArrayEquals(parsed, encode(cache.parse(source)));
+            report("Damaged", cache, folder);
+
+            Files.write(entry, Arrays.copyOf(content, 12));
+            Assert.assertArrayEquals(parsed, encode(cache.parse(source)));
+            report("Cut", cache, folder);
+
+            // An entry of the version 1, with a valid checksum
+            content = Files.readAllBytes(entry);
+            ByteBuffer.wrap(content).putInt(4, 1);
+            CRC32 checksum = new CRC32();
+            checksum.update(content, 0, content.length - 8);
+            ByteBuffer.wrap(content).putLong(content.length - 8, checksum.getValue());
+            Files.write(entry, content);
+            Assert.assertArrayEquals(parsed, encode(cache.parse(source)));
+            report("Outdated", cache, folder);
+
+            evict(source, parsed, Files.size(entry));
+            concurrent(source, parsed);
+
+            m_output.println();
+            root.jjtAccept(new IntermediateCodeGenVisitor(m_output), null);
+            m_output.flush();
+        } finally {
+            clear(folder);
+        }
+        assertResult();
+    }
+
+    // Two sources with the same tree (so entries of the same size) in a cache which only holds one
+    private void evict(byte[] source, byte[] parsed, long entrySize) throws Exception {
+        byte[] other = (new String(source, StandardCharsets.UTF_8) + "\n// Other\n").getBytes(StandardCharsets.UTF_8);
+        Path folder = Files.createTempDirectory("ast");
+        try {
+            AstCache cache = new AstCache(folder, entrySize * 3 / 2);
+            cache.parse(source);
+            Path first = entries(folder).get(0);
+            Files.setLastModifiedTime(first, FileTime.fromMillis(0));
+            Assert.assertArrayEquals(parsed, encode(cache.parse(other)));
+            Assert.assertFalse(Files.exists(first));
+            report("Evicted", cache, folder);
+
+            // Used again, the first source is parsed again and takes the place of the other
+            Files.setLastModifiedTime(entries(folder).get(0), FileTime.fromMillis(0));
+            Assert.assertArrayEquals(parsed, encode(cache.parse(source)));
+            Assert.assertEquals(Collections.singletonList(first), entries(folder));
+            report("Evicted again", cache, folder);
+        } finally {
+            clear(folder);
+        }
+
+        // An entry bigger than the limit is not stored
+        folder = Files.createTempDirectory("ast");
+        try {
+            AstCache cache = new AstCache(folder, entrySize - 1);
+            Assert.assertArrayEquals(parsed, encode(cache.parse(source)));
+            report("Too big", cache, folder);
+        } finally {
+            clear(folder);
+        }
+    }
+
+    // Every round, all the threads parse the same new source at once, so they store the same entry
+    private void concurrent(byte[] source, byte[] parsed) throws Exception {
+        Path folder = Files.createTempDirectory("ast");
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            AstCache cache = new AstCache(folder, Long.MAX_VALUE);
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < ROUNDS; i++) {
+                        byte[] round = (new String(source, StandardCharsets.UTF_8) + "\n// Round " + i + "\n").getBytes(StandardCharsets.UTF_8);
+                        barrier.await();
+                        Assert.assertArrayEquals(parsed, encode(cache.parse(round)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            Assert.assertEquals(THREADS * ROUNDS, cache.hits() + cache.misses());
+            Assert.assertTrue(cache.misses() >= ROUNDS);
+            Assert.assertEquals(ROUNDS, entries(folder).size());
+            Assert.assertEquals(new AstCache(folder, Long.MAX_VALUE).size(), cache.size());
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*.tmp")) {
+                Assert.assertFalse("Temporary file left", files.iterator().hasNext());
+            }
+            m_output.println("Concurrent: " + ROUNDS + " entries");
+        } finally {
+            pool.shutdownNow();
+            clear(folder);
+        }
+    }
+
+    // The hits, misses and entries of the cache, whose size must be the one of its entries
+    private void report(String step, AstCache cache, Path folder) throws IOException {
+        long size = 0;
+        List<Path> entries = entries(folder);
+        for (Path entry : entries) {
+            size += Files.size(entry);
+        }
+        Assert.assertEquals(step, size, cache.size());
+        m_output.println(step + ": " + cache.hits() + " hits, " + cache.misses() + " misses, " + entries.size() + " entries");
+    }
+
+    private static List<Path> entries(Path folder) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*.ast")) {
+            for (Path file : files) {
+                entries.add(file);
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] encode(ASTProgram root) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        CompactTree.of(root).write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void clear(Path folder) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
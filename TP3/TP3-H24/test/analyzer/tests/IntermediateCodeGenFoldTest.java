@@ -0,0 +1,38 @@
+package analyzer.tests;
+
+import analyzer.ast.ASTProgram;
+import analyzer.ast.Parser;
+import analyzer.prelude.Prelude;
+import analyzer.visitors.Constants;
+import analyzer.visitors.IntermediateCodeGenVisitor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.util.Collection;
+
+// The code of the IntermediateCodeGenVisitor with the known values of the program (see Constants)
+@RunWith(Parameterized.class)
+public class IntermediateCodeGenFoldTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/IntermediateCodeGenFoldTest/data";
+
+    public IntermediateCodeGenFoldTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        ASTProgram root = Parser.ParseTree(m_input);
+        root.jjtAccept(new IntermediateCodeGenVisitor(m_output, Prelude.EMPTY, Constants.of(root)), null);
+        m_output.flush();
+        assertResult();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
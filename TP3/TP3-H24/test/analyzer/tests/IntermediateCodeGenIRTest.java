@@ -0,0 +1,94 @@
+package analyzer.tests;
+
+import analyzer.ast.ASTProgram;
+import analyzer.ast.Parser;
+import analyzer.ast.ParserVisitor;
+import analyzer.ir.Code;
+import analyzer.visitors.IntermediateCodeGenFallVisitor;
+import analyzer.visitors.IntermediateCodeGenVisitor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collection;
+
+// The instructions of the Code built by both generators, read through the Code accessors. The text
+// a generator writes must be the one Code.print() gives.
+@RunWith(Parameterized.class)
+public class IntermediateCodeGenIRTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/IntermediateCodeGenIRTest/data";
+
+    private static final String[] OPCODES = {"LABEL", "GOTO", "IF", "IF_FALSE", "COPY", "NEG", "BINARY"};
+
+    public IntermediateCodeGenIRTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        ASTProgram root = Parser.ParseTree(m_input);
+
+        StringWriter text = new StringWriter();
+        IntermediateCodeGenVisitor visitor = new IntermediateCodeGenVisitor(new PrintWriter(text));
+        root.jjtAccept(visitor, null);
+        print(visitor, visitor.code(), text);
+
+        m_output.println();
+        text = new StringWriter();
+        IntermediateCodeGenFallVisitor fallVisitor = new IntermediateCodeGenFallVisitor(new PrintWriter(text));
+        root.jjtAccept(fallVisitor, null);
+        print(fallVisitor, fallVisitor.code(), text);
+
+        m_output.flush();
+        assertResult();
+    }
+
+    private void print(ParserVisitor visitor, Code code, StringWriter text) {
+        StringWriter printed = new StringWriter();
+        PrintWriter writer = new PrintWriter(printed);
+        code.print(writer);
+        writer.flush();
+        Assert.assertEquals(text.toString(), printed.toString());
+
+        m_output.println(visitor.getClass().getSimpleName() + ": " + code.size() + " instructions, "
+                + code.labels() + " labels");
+        for (int i = 0; i < code.size(); i++) {
+            int opcode = code.opcode(i);
+            StringBuilder line = new StringBuilder(OPCODES[opcode]);
+            if (opcode == Code.IF || opcode == Code.IF_FALSE || opcode == Code.BINARY) {
+                line.append(' ').append(Code.OPERATORS[code.operator(i)]);
+            }
+            operand(line, code, code.x(i));
+            if (opcode == Code.LABEL) {
+                // The suffix of a label is a name, if any
+                if (Code.isName(code.a(i))) {
+                    operand(line, code, code.a(i));
+                }
+            } else if (opcode != Code.GOTO) {
+                operand(line, code, code.a(i));
+                if (opcode != Code.COPY && opcode != Code.NEG) {
+                    operand(line, code, code.b(i));
+                }
+            }
+            m_output.println(line);
+        }
+    }
+
+    // The kind of the operand, its number and its text
+    private static void operand(StringBuilder line, Code code, int operand) {
+        String kind = Code.isTemp(operand) ? "temp" : Code.isLabel(operand) ? "label"
+                : Code.isName(operand) ? "name" : "constant";
+        line.append(' ').append(kind).append('#').append(Code.index(operand)).append('=').append(code.text(operand));
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -0,0 +1,49 @@
+package analyzer.tests;
+
+import analyzer.ast.ASTProgram;
+import analyzer.ast.Parser;
+import analyzer.ir.Peephole;
+import analyzer.prelude.Prelude;
+import analyzer.visitors.Constants;
+import analyzer.visitors.IntermediateCodeGenFallVisitor;
+import analyzer.visitors.IntermediateCodeGenVisitor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.util.Collection;
+
+// The code of both generators after the peephole pass (see Peephole), each followed by its counts
+@RunWith(Parameterized.class)
+public class IntermediateCodeGenPeepholeTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/IntermediateCodeGenPeepholeTest/data";
+
+    public IntermediateCodeGenPeepholeTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        ASTProgram root = Parser.ParseTree(m_input);
+
+        Peephole peephole = new Peephole();
+        root.jjtAccept(new IntermediateCodeGenVisitor(m_output, Prelude.EMPTY, Constants.NONE, peephole), null);
+        m_output.println(peephole);
+
+        m_output.println();
+        peephole = new Peephole();
+        root.jjtAccept(new IntermediateCodeGenFallVisitor(m_output, Prelude.EMPTY, peephole), null);
+        m_output.println(peephole);
+
+        m_output.flush();
+        assertResult();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -0,0 +1,130 @@
+package analyzer.tests;
+
+import analyzer.SemantiqueError;
+import analyzer.ast.Parser;
+import analyzer.ast.ParserVisitor;
+import analyzer.prelude.Prelude;
+import analyzer.visitors.IntermediateCodeGenFallVisitor;
+import analyzer.visitors.IntermediateCodeGenVisitor;
+import analyzer.visitors.SemantiqueVisitor;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Description: This test the preludes (see Prelude). The data file has the source of a prelude,
+ * a line "=====", then a program using its symbols. The prelude is compiled, saved and loaded
+ * again, then the program is visited with it by the SemantiqueVisitor and the two code
+ * generators: every visitor must give the same output (or error) as the prelude followed by the
+ * program. The code is only generated for a program without semantic error. The expected file
+ * has the output of every visitor.
+ */
+
+@RunWith(Parameterized.class)
+public class PreludeTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/PreludeTest/data";
+
+    // If the last visit ended with a SemantiqueError
+    private boolean m_error;
+
+    public PreludeTest(File file) {
+        super(file);
+    }
+
+    @Test
+    public void run() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read; (read = m_input.read(buffer)) != -1; ) {
+            bytes.write(buffer, 0, read);
+        }
+        String[] parts = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("(?m)^=====\\R", 2);
+        String source = parts[0];
+        String program = parts[1];
+        Prelude prelude = load(source);
+
+        m_output.println("Semantique:");
+        try {
+            prelude.semantiqueTypes();
+            compare(source, program, writer -> new SemantiqueVisitor(writer), writer -> new SemantiqueVisitor(writer, prelude));
+        } catch (IllegalStateException e) {
+            // The SemantiqueVisitor does not know the enums: the prelude followed by the program fails too
+            try {
+                Parser.ParseTree(new ByteArrayInputStream((source + program).getBytes(StandardCharsets.UTF_8)))
+                        .jjtAccept(new SemantiqueVisitor(new PrintWriter(new StringWriter())), null);
+                Assert.fail("The prelude was not checked, but the program was");
+            } catch (RuntimeException | SemantiqueError ex) {
+                m_output.println("The prelude could not be checked");
+            }
+        }
+
+        if (m_error) {
+            m_output.flush();
+            assertResult();
+            return;
+        }
+
+        m_output.println();
+        m_output.println("IntermediateCodeGen:");
+        compare(source, program, writer -> new IntermediateCodeGenVisitor(writer), writer -> new IntermediateCodeGenVisitor(writer, prelude));
+
+        m_output.println();
+        m_output.println("IntermediateCodeGenFall:");
+        compare(source, program, writer -> new IntermediateCodeGenFallVisitor(writer), writer -> new IntermediateCodeGenFallVisitor(writer, prelude));
+
+        m_output.flush();
+        assertResult();
+    }
+
+    // Compile the prelude, then load it from the file it is saved in
+    private static Prelude load(String source) throws Exception {
+        Path folder = Files.createTempDirectory("prelude");
+        Path file = folder.resolve("common.prelude");
+        try {
+            Prelude.compile(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8))).save(file);
+            return Prelude.load(file);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(folder);
+        }
+    }
+
+    // Visit the prelude followed by the program, then the program with the prelude: the outputs
+    // must be the same
+    private void compare(String source, String program, Function<PrintWriter, ParserVisitor> alone,
+                         Function<PrintWriter, ParserVisitor> withPrelude) throws Exception {
+        String expected = visit(source + program, alone);
+        String result = visit(program, withPrelude);
+        Assert.assertEquals(expected, result);
+        m_output.println(result);
+    }
+
+    // The output of the visitor, or its error
+    private String visit(String source, Function<PrintWriter, ParserVisitor> visitor) throws Exception {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        m_error = false;
+        try {
+            Parser.ParseTree(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8))).jjtAccept(visitor.apply(writer), null);
+        } catch (SemantiqueError ex) {
+            writer.print(ex.getMessage());
+            m_error = true;
+        }
+        writer.flush();
+        return text.toString();
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}
@@ -0,0 +1,153 @@
+package analyzer.bench;
+
+import analyzer.ast.ASTProgram;
+import analyzer.ast.ParseException;
+import analyzer.ast.Parser;
+import analyzer.ast.ParserVisitor;
+import analyzer.generator.ProgramGenerator;
+import analyzer.visitors.PrintAllVisitor;
+import analyzer.visitors.PrintMachineCodeVisitor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: JMH benchmarks measuring each phase of the compiler on its own:
+ *  - parse       : Parser.ParseTree
+ *  - printAll    : PrintAllVisitor on an already parsed tree
+ *  - machineCode : PrintMachineCodeVisitor (life variables, next use and register allocation)
+ *                  on an already parsed tree
+ *
+ * Every benchmark runs its phase once on each input of the set selected by the "input" parameter.
+ * Run with "ant bench" (the gc profiler is enabled by default to report the allocations).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PhaseBenchmark {
+
+    // "corpus" uses the files of test-suite/*/data,
+    // a number uses one program of ProgramGenerator with this many statements.
+    @Param({"corpus", "100", "1000", "10000"})
+    public String input;
+
+    private List<byte[]> m_sources;
+    private List<ASTProgram> m_printAllTrees;
+    private List<ASTProgram> m_machineCodeTrees;
+
+    private final PrintWriter m_output = new PrintWriter(new NullWriter());
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        if (input.equals("corpus")) {
+            m_sources = new ArrayList<>();
+            m_sources.addAll(read("./test-suite/PrintAllTest/data"));
+            m_sources.addAll(read("./test-suite/PrintMachineCodeTest/data"));
+            m_printAllTrees = parseValid(read("./test-suite/PrintAllTest/data"), Phase.PRINT_ALL);
+            m_machineCodeTrees = parseValid(read("./test-suite/PrintMachineCodeTest/data"), Phase.MACHINE_CODE);
+        } else {
+            ProgramGenerator generator = new ProgramGenerator();
+            generator.statements = Integer.parseInt(input);
+            byte[] source = generator.generate().getBytes();
+            m_sources = Arrays.asList(source);
+            m_printAllTrees = parseValid(m_sources, Phase.PRINT_ALL);
+            m_machineCodeTrees = parseValid(m_sources, Phase.MACHINE_CODE);
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) {
+        for (byte[] source : m_sources) {
+            try {
+                bh.consume(Parser.ParseTree(new ByteArrayInputStream(source)));
+            } catch (ParseException e) {
+                bh.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    public void printAll(Blackhole bh) {
+        for (ASTProgram tree : m_printAllTrees) {
+            bh.consume(tree.jjtAccept(Phase.PRINT_ALL.visitor(m_output), null));
+        }
+    }
+
+    @Benchmark
+    public void machineCode(Blackhole bh) {
+        for (ASTProgram tree : m_machineCodeTrees) {
+            bh.consume(tree.jjtAccept(Phase.MACHINE_CODE.visitor(m_output), null));
+        }
+    }
+
+    private static List<byte[]> read(String folder) throws Exception {
+        File[] files = new File(folder).listFiles();
+        Arrays.sort(files);
+        List<byte[]> sources = new ArrayList<>();
+        for (File file : files) {
+            sources.add(Files.readAllBytes(file.toPath()));
+        }
+        return sources;
+    }
+
+    // Keep the trees on which the phase runs without error, so the benchmark does not measure exceptions
+    private List<ASTProgram> parseValid(List<byte[]> sources, Phase phase) {
+        List<ASTProgram> trees = new ArrayList<>();
+        for (byte[] source : sources) {
+            try {
+                ASTProgram tree = Parser.ParseTree(new ByteArrayInputStream(source));
+                tree.jjtAccept(phase.visitor(m_output), null);
+                trees.add(tree);
+            } catch (Throwable e) {
+                // Not a valid input for this phase
+            }
+        }
+        if (trees.isEmpty()) {
+            throw new IllegalStateException("No valid input for " + phase);
+        }
+        return trees;
+    }
+
+    private enum Phase {
+        PRINT_ALL,
+        MACHINE_CODE;
+
+        ParserVisitor visitor(PrintWriter output) {
+            if (this == PRINT_ALL) {
+                return new PrintAllVisitor(output);
+            }
+            return new PrintMachineCodeVisitor(output);
+        }
+    }
+
+    // The output of the visitors is not part of what we want to measure
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -21,6 +21,11 @@ public class ASTIdentifier extends SimpleNode {
   public void setValue(String v) { value = v; }
   public String getValue() { return value; }
 
+  // The id of the name in the Symbols of the program, NONE if the node was not built by the parser
+  private int symbol = Symbols.NONE;
+  public void setSymbol(int s) { symbol = s; }
+  public int getSymbol() { return symbol; }
+
   public boolean isTemporary() {
     if(value.length() < 2 || value.charAt(0) != 't')
       return false;
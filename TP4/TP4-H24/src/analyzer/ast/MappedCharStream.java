@@ -0,0 +1,248 @@
+package analyzer.ast;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Description: A JavaCharStream reading a file mapped in memory.
+ *
+ * The generated JavaCharStream decodes the input through a Reader and copies every character
+ * in a circular buffer (with its line and column) while looking for unicode escapes. When the
+ * file only contains ASCII characters and no backslash, none of this is needed: a character
+ * is a byte of the file, and the line and column of a position can be computed when the token
+ * manager asks for them. The positions are asked in increasing order (begin then end of each
+ * token), so they are computed by moving a cursor forward in the file.
+ *
+ * Use open() to get a stream for a file: it falls back to the generated JavaCharStream, on
+ * the file read as UTF-8, when the fast path cannot be used.
+ */
+public class MappedCharStream extends JavaCharStream {
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long BACKSLASHES = 0x5C5C5C5C5C5C5C5CL;
+
+    private final MappedByteBuffer m_input;
+    private final int m_length;
+
+    // Offset of the last character read and of the first character of the current token
+    private int m_pos = -1;
+    private int m_tokenBegin = -1;
+
+    // Line and column after reading all the characters before m_cursor
+    private int m_cursor = 0;
+    private int m_line = 1;
+    private int m_column = 0;
+    private boolean m_prevCharIsCR = false;
+    private boolean m_prevCharIsLF = false;
+
+    // Set by adjustBeginLineColumn(): from the offset m_shiftFrom, the lines are moved by
+    // m_lineShift, and the columns of the line of m_shiftFrom by m_columnShift
+    private int m_shiftFrom = Integer.MAX_VALUE;
+    private int m_shiftLine = 0;
+    private int m_lineShift = 0;
+    private int m_columnShift = 0;
+
+    // Reused to build the images of the tokens
+    private byte[] m_image = new byte[64];
+
+    private MappedCharStream(MappedByteBuffer input) {
+        super((java.io.Reader) null, 1, 1, 1);
+        m_input = input;
+        m_length = input.limit();
+    }
+
+    /**
+     * Open a stream on the given file. The file is mapped in memory if it only contains ASCII
+     * characters without backslashes, otherwise it is read whole and given to the generated
+     * JavaCharStream, so the file is closed when open() returns.
+     */
+    public static JavaCharStream open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                MappedByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (isPlainAscii(input)) {
+                    return new MappedCharStream(input);
+                }
+            }
+        }
+        return new JavaCharStream(new StringReader(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)));
+    }
+
+    // True if there is no byte outside of ASCII and no '\' (start of a unicode escape).
+    // Eight bytes are checked at once.
+    private static boolean isPlainAscii(MappedByteBuffer input) {
+        int length = input.limit();
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long bytes = input.getLong(i);
+            long backslashes = bytes ^ BACKSLASHES;
+            if ((bytes & HIGH_BITS) != 0 || ((backslashes - LOW_BITS) & ~backslashes & HIGH_BITS) != 0) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            byte b = input.get(i);
+            if (b < 0 || b == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public char BeginToken() throws IOException {
+        m_tokenBegin = m_pos + 1;
+        return readChar();
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        if (m_pos + 1 >= m_length) {
+            // Like JavaCharStream, the position stays on the last character read
+            if (m_tokenBegin > m_pos) {
+                m_tokenBegin = m_pos;
+            }
+            throw new IOException();
+        }
+        return (char) m_input.get(++m_pos);
+    }
+
+    @Override
+    public void backup(int amount) {
+        m_pos -= amount;
+    }
+
+    @Override
+    public String GetImage() {
+        int length = m_pos - m_tokenBegin + 1;
+        if (length <= 0) {
+            return "";
+        }
+        if (length > m_image.length) {
+            m_image = new byte[Math.max(length, m_image.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            m_image[i] = m_input.get(m_tokenBegin + i);
+        }
+        return new String(m_image, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public char[] GetSuffix(int len) {
+        char[] ret = new char[len];
+        int start = m_pos - len + 1;
+        for (int i = 0; i < len; i++) {
+            ret[i] = (char) m_input.get(start + i);
+        }
+        return ret;
+    }
+
+    @Override
+    public int getBeginLine() {
+        return line(m_tokenBegin);
+    }
+
+    @Override
+    public int getBeginColumn() {
+        return column(m_tokenBegin);
+    }
+
+    @Override
+    public int getEndLine() {
+        return line(m_pos);
+    }
+
+    @Override
+    public int getEndColumn() {
+        return column(m_pos);
+    }
+
+    @Override
+    @Deprecated
+    public int getLine() {
+        return getEndLine();
+    }
+
+    @Override
+    @Deprecated
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    private int line(int offset) {
+        moveCursor(offset);
+        return offset >= m_shiftFrom ? m_line + m_lineShift : m_line;
+    }
+
+    private int column(int offset) {
+        moveCursor(offset);
+        return offset >= m_shiftFrom && m_line == m_shiftLine ? m_column + m_columnShift : m_column;
+    }
+
+    // Place the cursor just after the character at the given offset, so m_line and m_column
+    // are the position of this character. The same rules as JavaCharStream.UpdateLineColumn are used.
+    private void moveCursor(int offset) {
+        int target = offset + 1;
+        if (target < m_cursor) {
+            m_cursor = 0;
+            m_line = 1;
+            m_column = 0;
+            m_prevCharIsCR = m_prevCharIsLF = false;
+        }
+        for (; m_cursor < target; m_cursor++) {
+            char c = (char) m_input.get(m_cursor);
+            m_column++;
+
+            if (m_prevCharIsLF) {
+                m_prevCharIsLF = false;
+                m_line += (m_column = 1);
+            } else if (m_prevCharIsCR) {
+                m_prevCharIsCR = false;
+                if (c == '\n') {
+                    m_prevCharIsLF = true;
+                } else {
+                    m_line += (m_column = 1);
+                }
+            }
+
+            switch (c) {
+                case '\r':
+                    m_prevCharIsCR = true;
+                    break;
+                case '\n':
+                    m_prevCharIsLF = true;
+                    break;
+                case '\t':
+                    m_column--;
+                    m_column += (tabSize - (m_column % tabSize));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // The current token begins at newLine and newCol: the rest of its line moves with it, and
+    // the next lines are numbered from newLine
+    @Override
+    public void adjustBeginLineColumn(int newLine, int newCol) {
+        moveCursor(m_tokenBegin);
+        m_shiftFrom = m_tokenBegin;
+        m_shiftLine = m_line;
+        m_lineShift = newLine - m_line;
+        m_columnShift = newCol - m_column;
+    }
+
+    @Override
+    public void Done() {
+        m_image = null;
+    }
+}
@@ -0,0 +1,129 @@
+package analyzer.generator;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Description: Generates random basic blocks (.ci files) following Grammaire.jjt, to test the
+ * register allocation on inputs much larger than the test suite.
+ *
+ * The shape of the block is given by the public fields (the "knobs"), change them before calling
+ * generate(). The same knobs and seed always give the same block.
+ *
+ * Every statement assigns a new temporary or one of the variables. Its operands are variables,
+ * constants or temporaries assigned in the liveRange previous statements: the more registers are
+ * needed to keep these temporaries alive, the more the allocation has to spill.
+ */
+public class ProgramGenerator {
+
+    // Number of statements in the block
+    public int statements = 100;
+    // Value of NUMBER_OF_REGISTER_AVAILABLE
+    public int registers = 4;
+    // Number of variables (a, b, c...), the first "returns" ones are returned at the end
+    public int variables = 8;
+    public int returns = 4;
+    // How many statements back an operand may be taken from, a larger range keeps more temporaries alive
+    public int liveRange = 6;
+    // Give unary minus statements ("x = minus y"), PrintMachineCodeVisitor does not handle them yet
+    public boolean unaryMinus = false;
+    public long seed = 0;
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/"};
+
+    private Random m_random;
+    private StringBuilder m_code;
+    private String[] m_assigned;
+
+    public String generate() {
+        m_random = new Random(seed);
+        m_code = new StringBuilder();
+        m_assigned = new String[statements];
+
+        m_code.append("NUMBER_OF_REGISTER_AVAILABLE: ").append(registers).append("\n\n");
+        for (int i = 0; i < statements; i++) {
+            m_assigned[i] = (variables > 0 && m_random.nextInt(4) == 0) ? variable(m_random.nextInt(variables)) : "t" + i;
+
+            int choice = m_random.nextInt(unaryMinus ? 8 : 7);
+            if (choice < 5) {
+                line(m_assigned[i] + " = " + operand(i) + " " + OPERATORS[m_random.nextInt(OPERATORS.length)] + " " + operand(i));
+            } else if (choice < 7) {
+                line(m_assigned[i] + " = " + operand(i));
+            } else {
+                line(m_assigned[i] + " = minus " + operand(i));
+            }
+        }
+
+        m_code.append("\nreturn");
+        for (int i = 0; i < Math.min(returns, variables); i++) {
+            m_code.append(i == 0 ? " " : ",").append(variable(i));
+        }
+        m_code.append("\n");
+        return m_code.toString();
+    }
+
+    // A temporary assigned in the liveRange previous statements, a variable or a constant
+    private String operand(int statement) {
+        int choice = m_random.nextInt(6);
+        int from = Math.max(0, statement - Math.max(1, liveRange));
+        if (choice < 3 && statement > 0) {
+            return m_assigned[from + m_random.nextInt(statement - from)];
+        } else if (choice < 5 && variables > 0) {
+            return variable(m_random.nextInt(variables));
+        }
+        return String.valueOf(m_random.nextInt(100));
+    }
+
+    // a, b, ..., z, then a_1, b_1, ...
+    private static String variable(int index) {
+        char letter = (char) ('a' + index % 26);
+        return index < 26 ? String.valueOf(letter) : letter + "_" + index / 26;
+    }
+
+    private void line(String text) {
+        m_code.append(text).append('\n');
+    }
+
+    // The arguments are:
+    // arg[0] (Optional): The path of the output file, will print to System.out if missing or "-".
+    // The other arguments change the knobs, ex: statements=10000 registers=3 liveRange=20 seed=3
+    public static void main(String[] args) throws FileNotFoundException {
+        ProgramGenerator generator = new ProgramGenerator();
+        for (int i = 1; i < args.length; i++) {
+            generator.setKnob(args[i]);
+        }
+
+        String program = generator.generate();
+        if (args.length == 0 || args[0].equals("-")) {
+            System.out.print(program);
+        } else {
+            try (PrintWriter output = new PrintWriter(args[0])) {
+                output.print(program);
+            }
+        }
+    }
+
+    // Change a knob from a "name=value" string
+    public void setKnob(String knob) {
+        int separator = knob.indexOf('=');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + knob);
+        }
+        String name = knob.substring(0, separator);
+        String value = knob.substring(separator + 1);
+        try {
+            Field field = ProgramGenerator.class.getField(name);
+            if (field.getType() == int.class) {
+                field.setInt(this, Integer.parseInt(value));
+            } else if (field.getType() == long.class) {
+                field.setLong(this, Long.parseLong(value));
+            } else {
+                field.setBoolean(this, Boolean.parseBoolean(value));
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Unknown knob " + name);
+        }
+    }
+}
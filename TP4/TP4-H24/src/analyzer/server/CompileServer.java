@@ -0,0 +1,237 @@
+package analyzer.server;
+
+import analyzer.ast.ASTProgram;
+import analyzer.ast.Node;
+import analyzer.ast.ParseException;
+import analyzer.ast.Parser;
+import analyzer.ast.ParserVisitor;
+import analyzer.ast.SimpleNode;
+import analyzer.ast.TokenMgrError;
+import analyzer.visitors.PrintAllVisitor;
+import analyzer.visitors.PrintMachineCodeVisitor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: A long running process answering compile requests, so the JVM starts only once and
+ * the parser and the visitors stay compiled by the JIT between the files.
+ *
+ * The requests are read from an input stream (System.in) and the responses are written in an
+ * output stream (System.out). A request is one header line, followed by the source when it is
+ * sent inline:
+ *
+ *   <id> <phase> <path>        compile the file at path
+ *   <id> <phase> - <length>    compile the next length bytes (UTF-8)
+ *
+ * where phase is one of dump, all or machine (see Phase). An empty line or the end of the
+ * input stops the server once the pending requests are done.
+ *
+ * Every response is one header line followed by the output of the phase:
+ *
+ *   <id> <ok|error> <parse us> <phase us> <length>
+ *
+ * The two times are in microseconds. On error, the output is the message of the exception. An
+ * invalid request (a missing field, an unknown phase, a length which is not a number, a source
+ * cut by the end of the input) is answered with an error too, the server keeps running.
+ * The requests run on a pool of threads, so the responses can come back in any order: the id
+ * tells which request they answer. Each thread keeps its own parser (see Parser.ParseTree).
+ */
+public class CompileServer {
+
+    public enum Phase {
+        dump, all, machine
+    }
+
+    private final InputStream m_input;
+    private final OutputStream m_output;
+    private final ExecutorService m_pool;
+
+    public CompileServer(InputStream input, OutputStream output, int threads) {
+        m_input = new BufferedInputStream(input);
+        m_output = new BufferedOutputStream(output);
+        m_pool = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    // The arguments are:
+    // arg[0] (Optional): The number of threads, every core by default.
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        new CompileServer(System.in, System.out, threads).serve();
+    }
+
+    // Answer the requests until the end of the input, then wait for the pending ones
+    public void serve() throws IOException, InterruptedException {
+        try {
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                submit(line);
+            }
+        } finally {
+            m_pool.shutdown();
+            m_pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            synchronized (m_output) {
+                m_output.flush();
+            }
+        }
+    }
+
+    private void submit(String header) throws IOException {
+        String[] parts = header.trim().split("\\s+");
+        String id = parts[0];
+        if (parts.length < 3 || (parts[2].equals("-") && parts.length < 4)) {
+            respond(id, false, 0, 0, "Invalid request: " + header);
+            return;
+        }
+
+        // The inline source must be read here, the next request follows it
+        byte[] inline = null;
+        if (parts[2].equals("-")) {
+            int length;
+            try {
+                length = Integer.parseInt(parts[3]);
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+            if (length < 0) {
+                respond(id, false, 0, 0, "Invalid length: " + parts[3]);
+                return;
+            }
+            try {
+                inline = readBytes(length);
+            } catch (EOFException e) {
+                // The input ends in the source, there is no request after this one
+                respond(id, false, 0, 0, e.getMessage());
+                return;
+            }
+        }
+
+        Phase phase;
+        try {
+            phase = Phase.valueOf(parts[1]);
+        } catch (IllegalArgumentException e) {
+            respond(id, false, 0, 0, "Unknown phase: " + parts[1]);
+            return;
+        }
+
+        byte[] source = inline;
+        String path = parts[2];
+        m_pool.execute(() -> {
+            try {
+                run(id, phase, source != null ? source : Files.readAllBytes(Paths.get(path)));
+            } catch (IOException e) {
+                respond(id, false, 0, 0, e.toString());
+            }
+        });
+    }
+
+    private void run(String id, Phase phase, byte[] source) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8));
+
+        long start = System.nanoTime();
+        long parsed = start;
+        try {
+            ASTProgram root = Parser.ParseTree(new ByteArrayInputStream(source));
+            parsed = System.nanoTime();
+
+            if (phase == Phase.dump) {
+                dump(root, "", writer);
+            } else {
+                root.jjtAccept(visitor(phase, writer), null);
+            }
+            writer.flush();
+            long end = System.nanoTime();
+            respond(id, true, parsed - start, end - parsed, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        } catch (ParseException | TokenMgrError | RuntimeException | StackOverflowError e) {
+            long end = System.nanoTime();
+            if (parsed == start) {
+                parsed = end;
+            }
+            // A StackOverflowError has no message, the program is nested too deeply for the parser
+            String message = e instanceof StackOverflowError ? "Program nested too deeply" : String.valueOf(e.getMessage());
+            respond(id, false, parsed - start, end - parsed, message);
+        }
+    }
+
+    private static ParserVisitor visitor(Phase phase, PrintWriter writer) {
+        switch (phase) {
+            case all:
+                return new PrintAllVisitor(writer);
+            case machine:
+                return new PrintMachineCodeVisitor(writer);
+            default:
+                throw new IllegalArgumentException("No visitor for " + phase);
+        }
+    }
+
+    // Same output as SimpleNode.dump(), but in the given writer instead of System.out
+    private static void dump(SimpleNode node, String prefix, PrintWriter writer) {
+        writer.println(node.toString(prefix));
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            Node child = node.jjtGetChild(i);
+            if (child != null) {
+                dump((SimpleNode) child, prefix + " ", writer);
+            }
+        }
+    }
+
+    private void respond(String id, boolean ok, long parseNanos, long phaseNanos, String output) {
+        byte[] body = output.getBytes(StandardCharsets.UTF_8);
+        String header = id + (ok ? " ok " : " error ") + parseNanos / 1000 + " " + phaseNanos / 1000 + " " + body.length + "\n";
+        synchronized (m_output) {
+            try {
+                m_output.write(header.getBytes(StandardCharsets.UTF_8));
+                m_output.write(body);
+                m_output.flush();
+            } catch (IOException e) {
+                // The client is gone, the remaining requests are still run but not answered
+            }
+        }
+    }
+
+    // Read a line of the header, returns null at the end of the input
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = m_input.read()) != '\n') {
+            if (c == -1) {
+                return line.size() > 0 ? line.toString("UTF-8") : null;
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return line.toString("UTF-8");
+    }
+
+    // Read the inline source by blocks, so a wrong length does not allocate more than was sent
+    private byte[] readBytes(int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(length, 8192));
+        byte[] block = new byte[8192];
+        int read = 0;
+        while (read < length) {
+            int n = m_input.read(block, 0, Math.min(block.length, length - read));
+            if (n == -1) {
+                throw new EOFException("Expected " + length + " bytes of source, got " + read);
+            }
+            bytes.write(block, 0, n);
+            read += n;
+        }
+        return bytes.toByteArray();
+    }
+}
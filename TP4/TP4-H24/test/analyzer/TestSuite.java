@@ -17,7 +17,8 @@ import analyzer.tests.*;
 @RunWith(Suite.class)
 
 @Suite.SuiteClasses({
-        PrintMachineCodeTest.class
+        PrintMachineCodeTest.class,
+        MappedCharStreamTest.class
 })
 
 public class TestSuite {
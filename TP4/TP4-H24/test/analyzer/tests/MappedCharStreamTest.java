@@ -0,0 +1,70 @@
+package analyzer.tests;
+
+import analyzer.ast.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Description: This test Parser.ParseTree(Path), which maps the file in memory (see MappedCharStream).
+ * Every file is parsed from its path and from a stream: the two parses must give the same tree
+ * (with the values of its identifiers and integers), or the same error at the same position. The files have unicode escapes, CRLF or CR line
+ * ends, tabs and non-ASCII comments, read as UTF-8 by both parses.
+ */
+
+@RunWith(Parameterized.class)
+public class MappedCharStreamTest extends BaseTest {
+
+    private static String m_test_suite_path = "./test-suite/MappedCharStreamTest/data";
+
+    private final File m_file;
+
+    public MappedCharStreamTest(File file) {
+        super(file);
+        m_file = file;
+    }
+
+    @Test
+    public void run() throws Exception {
+        String stream = parse(null);
+        Assert.assertEquals(stream, parse(m_file.toPath()));
+        m_output.print(stream);
+        m_output.flush();
+        assertResult();
+    }
+
+    // The tree of the file, or the message of its error, read from m_input or mapped from path
+    private String parse(Path path) throws Exception {
+        StringBuilder text = new StringBuilder();
+        try {
+            dump(path != null ? Parser.ParseTree(path) : Parser.ParseTree(m_input), "", text);
+        } catch (ParseException | TokenMgrError e) {
+            text.append(e.getMessage());
+        }
+        return text.toString();
+    }
+
+    // One line per node, with the value of the identifiers and integers
+    private static void dump(Node node, String prefix, StringBuilder text) {
+        text.append(prefix).append(node);
+        if (node instanceof ASTIdentifier) {
+            text.append(" ").append(((ASTIdentifier) node).getValue());
+        } else if (node instanceof ASTIntValue) {
+            text.append(" ").append(((ASTIntValue) node).getValue());
+        }
+        text.append(System.lineSeparator());
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            dump(node.jjtGetChild(i), prefix + "  ", text);
+        }
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getFiles() {
+        return getFiles(m_test_suite_path);
+    }
+
+}